@@ -0,0 +1,188 @@
+package org.mafisher;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g", "-Djava.awt.headless=true"})
+public class ImageProcessorBenchmark {
+
+    @Param({"0.3", "12", "50"})
+    public String megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "INT_ARGB"})
+    public String type;
+
+    private static final Kernel LAPLACIAN_5X5 = new Kernel(5, 5, new float[]{
+            0, 0, -1, 0, 0,
+            0, -1, -2, -1, 0,
+            -1, -2, 17, -2, -1,
+            0, -1, -2, -1, 0,
+            0, 0, -1, 0, 0});
+
+    private static final Kernel DISK_31X31 = disk(15);
+
+    private final ImageProcessor processor = new ImageProcessor();
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] size = switch (megapixels) {
+            case "0.3" -> new int[]{640, 480};
+            case "12" -> new int[]{4000, 3000};
+            case "50" -> new int[]{8660, 5774};
+            default -> throw new IllegalArgumentException("Nieznany rozmiar: " + megapixels);
+        };
+        int imageType = switch (type) {
+            case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+            default -> throw new IllegalArgumentException("Nieznany typ: " + type);
+        };
+        image = new BufferedImage(size[0], size[1], imageType);
+        SplittableRandom rnd = new SplittableRandom(42);
+        int[] row = new int[size[0]];
+        for (int y = 0; y < size[1]; y++) {
+            for (int x = 0; x < row.length; x++) row[x] = 0xFF000000 | rnd.nextInt(1 << 24);
+            image.setRGB(0, y, row.length, 1, row, 0, row.length);
+        }
+    }
+
+    private static Kernel disk(int radius) {
+        int size = 2 * radius + 1;
+        float[] data = new float[size * size];
+        int count = 0;
+        for (int y = -radius; y <= radius; y++) {
+            for (int x = -radius; x <= radius; x++) {
+                if (x * x + y * y <= radius * radius) {
+                    data[(y + radius) * size + x + radius] = 1;
+                    count++;
+                }
+            }
+        }
+        for (int i = 0; i < data.length; i++) data[i] /= count;
+        return new Kernel(size, size, data);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double mpix;
+    }
+
+    private BufferedImage count(BufferedImage result, Throughput counter) {
+        counter.mpix += image.getWidth() * (double) image.getHeight() / 1_000_000;
+        return result;
+    }
+
+    @Benchmark
+    public BufferedImage add(Throughput counter) {
+        return count(processor.add(image, 20, -10, 5), counter);
+    }
+
+    @Benchmark
+    public BufferedImage multiply(Throughput counter) {
+        return count(processor.multiply(image, 1.2, 0.9, 1.1), counter);
+    }
+
+    @Benchmark
+    public BufferedImage toGrayscaleLuminosity(Throughput counter) {
+        return count(processor.toGrayscaleLuminosity(image), counter);
+    }
+
+    @Benchmark
+    public BufferedImage colourCorrectionChained(Throughput counter) {
+        BufferedImage result = processor.changeBrightness(image, 10);
+        result = processor.multiply(result, 1.1, 1.0, 0.9);
+        result = processor.add(result, -5, 0, 5);
+        result = processor.divide(result, 1.05, 1.05, 1.05);
+        result = processor.subtract(result, 3, 3, 3);
+        return count(result, counter);
+    }
+
+    @Benchmark
+    public BufferedImage colourCorrectionPipeline(Throughput counter) {
+        return count(processor.pipeline(image)
+                .changeBrightness(10)
+                .multiply(1.1, 1.0, 0.9)
+                .add(-5, 0, 5)
+                .divide(1.05, 1.05, 1.05)
+                .subtract(3, 3, 3)
+                .build(), counter);
+    }
+
+    @Benchmark
+    public BufferedImage smoothingFilter(Throughput counter) {
+        return count(processor.smoothingFilter(image), counter);
+    }
+
+    @Benchmark
+    public BufferedImage medianFilter(Throughput counter) {
+        return count(processor.medianFilter(image), counter);
+    }
+
+    @Benchmark
+    public BufferedImage sobelFilter(Throughput counter) {
+        return count(processor.sobelFilter(image), counter);
+    }
+
+    @Benchmark
+    public BufferedImage sharpenFilter(Throughput counter) {
+        return count(processor.sharpenFilter(image), counter);
+    }
+
+    @Benchmark
+    public BufferedImage gaussianBlur(Throughput counter) {
+        return count(processor.gaussianBlur(image), counter);
+    }
+
+    @Benchmark
+    public BufferedImage boxBlur15(Throughput counter) {
+        return count(processor.boxBlur(image, 15), counter);
+    }
+
+    @Benchmark
+    public BufferedImage gaussianBlur15(Throughput counter) {
+        return count(processor.gaussianBlur(image, 15), counter);
+    }
+
+    @Benchmark
+    public BufferedImage medianFilter5x5(Throughput counter) {
+        return count(processor.medianFilter(image, 2), counter);
+    }
+
+    @Benchmark
+    public BufferedImage medianFilter15(Throughput counter) {
+        return count(processor.medianFilter(image, 15), counter);
+    }
+
+    @Benchmark
+    public BufferedImage convolve5x5(Throughput counter) {
+        return count(processor.convolve(image, LAPLACIAN_5X5), counter);
+    }
+
+    @Benchmark
+    public BufferedImage convolve31x31(Throughput counter) {
+        return count(processor.convolve(image, DISK_31X31), counter);
+    }
+}
@@ -0,0 +1,69 @@
+package org.mafisher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+public class PPMImageLoaderBenchmark {
+
+    @Param({"255", "1000"})
+    public int maxval;
+
+    private final PPMImageLoader loader = new PPMImageLoader();
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        int width = 3000;
+        int height = 2000;
+        file = File.createTempFile("bench", ".ppm");
+        SplittableRandom rnd = new SplittableRandom(42);
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII)) {
+            out.write("P3\n# " + width + "x" + height + "\n" + width + " " + height + "\n" + maxval + "\n");
+            StringBuilder line = new StringBuilder();
+            for (int y = 0; y < height; y++) {
+                line.setLength(0);
+                for (int x = 0; x < width * 3; x++) {
+                    if (x > 0) line.append(' ');
+                    line.append(rnd.nextInt(maxval + 1));
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public BufferedImage loadP3() throws IOException {
+        return loader.load(file, true);
+    }
+}
@@ -0,0 +1,353 @@
+package org.mafisher;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+public class BatchProcessor {
+
+    private static final int STRIP_ROWS = 256;
+
+    private final ImageProcessor imageProcessor = new ImageProcessor();
+    private final ImageSaver imageSaver = new ImageSaver();
+    private final PPMImageLoader ppmLoader = new PPMImageLoader();
+    private final ImageLoader jpegLoader = new JPEGImageLoader();
+    private final StripProcessor stripProcessor = new StripProcessor(ppmLoader, STRIP_ROWS);
+
+    private final List<Step> pipeline;
+    private final String format;
+    private final boolean linearScale;
+    private final PointOperation stripOperation;
+
+    public BatchProcessor(String pipelineSpec, String format, boolean linearScale) {
+        this.pipeline = parsePipeline(pipelineSpec);
+        this.format = format.toLowerCase();
+        this.linearScale = linearScale;
+        if (!List.of("ppm", "pgm", "pbm", "jpg").contains(this.format)) {
+            throw new IllegalArgumentException("Nieobsługiwany format wyjściowy: " + format);
+        }
+        this.stripOperation = this.format.equals("ppm") && pipeline.size() == 1 ? pipeline.get(0).point() : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        boolean linearScale = true;
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            switch (arg) {
+                case "--liniowe" -> linearScale = true;
+                case "--obcinanie" -> linearScale = false;
+                default -> positional.add(arg);
+            }
+        }
+        if (positional.size() < 3 || positional.size() > 5) usage();
+        File inputDir = new File(positional.get(0));
+        File outputDir = new File(positional.get(1));
+        String format = positional.size() > 3 ? positional.get(3) : "ppm";
+
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        if (positional.size() > 4) {
+            try {
+                threads = Integer.parseInt(positional.get(4));
+            } catch (NumberFormatException ex) {
+                threads = 0;
+            }
+            if (threads <= 0) {
+                System.err.println("Liczba wątków musi być dodatnią liczbą całkowitą: " + positional.get(4));
+                usage();
+            }
+        }
+
+        BatchProcessor processor;
+        try {
+            processor = new BatchProcessor(positional.get(2), format, linearScale);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        int failed;
+        try {
+            failed = processor.run(inputDir, outputDir, threads);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static void usage() {
+        System.err.println("Użycie: BatchProcessor [--liniowe|--obcinanie] <katalog wejściowy> <katalog wyjściowy> <potok> [format=ppm] [wątki]");
+        System.err.println("Skalowanie próbek PPM o maxval różnym od 255: --liniowe (domyślnie) przelicza do 0-255, --obcinanie obcina do 255");
+        System.err.println("Potok: operacje oddzielone przecinkami, np. gray_lum,median,sobel lub add:10:0:-10,multiply:1.2:1.2:1.2");
+        System.err.println("Operacje: add, subtract, multiply, divide (:v lub :r:g:b, jedna wartość = wszystkie kanały), brightness:v, gray_avg, gray_lum, smooth, box:r, median[:r], sobel[:l2|l1|dir], sharpen, gauss[:r], conv:w:h:wagi..., stretch, equalize");
+        System.exit(2);
+    }
+
+    public int run(File inputDir, File outputDir, int threads) throws InterruptedException, IOException {
+        File[] files = inputDir.listFiles(f -> f.isFile() && loaderFor(f) != null);
+        if (files == null) throw new IOException("Nie można odczytać katalogu: " + inputDir);
+        if (inputDir.getCanonicalFile().equals(outputDir.getCanonicalFile())) {
+            throw new IOException("Katalog wyjściowy musi być inny niż katalog wejściowy: " + outputDir);
+        }
+        Arrays.sort(files);
+        Map<String, File> outputs = new HashMap<>();
+        for (File file : files) {
+            File previous = outputs.putIfAbsent(outputName(file).toLowerCase(), file);
+            if (previous != null) {
+                throw new IOException("Pliki " + previous.getName() + " i " + file.getName() + " dają ten sam plik wyjściowy: " + outputName(file));
+            }
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) throw new IOException("Nie można utworzyć katalogu: " + outputDir);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<String>> results = new ArrayList<>();
+        for (File file : files) results.add(pool.submit(() -> processFile(file, outputDir)));
+        pool.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < files.length; i++) {
+            try {
+                System.out.println(results.get(i).get());
+            } catch (ExecutionException ex) {
+                failed++;
+                System.err.println(files[i].getName() + ": błąd - " + ex.getCause().getMessage());
+            }
+        }
+        System.out.printf("Przetworzono %d plików (%d błędów) w %d ms%n", files.length - failed, failed, (System.nanoTime() - start) / 1_000_000);
+        return failed;
+    }
+
+    private String processFile(File file, File outputDir) throws IOException {
+        long t0 = System.nanoTime();
+        File out = new File(outputDir, outputName(file));
+        PPMHeader header = loaderFor(file) == ppmLoader ? ppmLoader.readHeader(file) : null;
+        if (header != null && header.getMaxval() <= 255 && stripOperation != null) {
+            stripProcessor.process(file, out, linearScale, stripOperation);
+            return String.format("%s: %d ms (strumieniowo, paski po %d wierszy)", file.getName(), (System.nanoTime() - t0) / 1_000_000, STRIP_ROWS);
+        }
+        HighDepthImage highDepth = header != null && header.getMaxval() > 255 ? ppmLoader.loadHighDepth(file) : null;
+        BufferedImage img = null;
+        if (highDepth == null) {
+            img = loaderFor(file).load(file, linearScale);
+            if (img == null) throw new IOException("Nieobsługiwany format pliku");
+        }
+        long t1 = System.nanoTime();
+        for (Step step : pipeline) {
+            if (highDepth != null && step.highDepth() != null) {
+                highDepth = step.highDepth().apply(highDepth);
+                continue;
+            }
+            if (highDepth != null) {
+                img = highDepth.toBufferedImage(linearScale);
+                highDepth = null;
+            }
+            img = step.image().apply(img);
+        }
+        long t2 = System.nanoTime();
+        if (highDepth != null) {
+            switch (format) {
+                case "pgm" -> imageSaver.savePNM(highDepth, out, PNMWriter.Format.PGM);
+                case "pbm" -> imageSaver.savePNM(highDepth, out, PNMWriter.Format.PBM);
+                case "jpg" -> imageSaver.saveAsJpeg(highDepth.toBufferedImage(linearScale), out, 0.9f);
+                default -> imageSaver.saveAsPPM(highDepth, out);
+            }
+        } else {
+            switch (format) {
+                case "pgm" -> imageSaver.saveAsPGM(img, out);
+                case "pbm" -> imageSaver.saveAsPBM(img, out);
+                case "jpg" -> imageSaver.saveAsJpeg(img, out, 0.9f);
+                default -> imageSaver.saveAsPPM(img, out);
+            }
+        }
+        long t3 = System.nanoTime();
+        return String.format("%s: %d ms (wczytanie %d ms, przetwarzanie %d ms, zapis %d ms)", file.getName(),
+                (t3 - t0) / 1_000_000, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000);
+    }
+
+    private String outputName(File file) {
+        return stripExt(file.getName()) + "." + format;
+    }
+
+    private ImageLoader loaderFor(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".ppm")) return ppmLoader;
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return jpegLoader;
+        return null;
+    }
+
+    private List<Step> parsePipeline(String spec) {
+        List<Step> steps = new ArrayList<>();
+        List<PointStep> pointSteps = new ArrayList<>();
+        for (String token : spec.split(",")) {
+            String[] parts = token.trim().split(":");
+            String[] args = Arrays.copyOfRange(parts, 1, parts.length);
+            PointStep pointStep = parsePointStep(parts[0], args);
+            if (pointStep != null) {
+                pointSteps.add(pointStep);
+                continue;
+            }
+            flushPointSteps(steps, pointSteps);
+            steps.add(parseStep(parts[0], args));
+        }
+        flushPointSteps(steps, pointSteps);
+        return steps;
+    }
+
+    private void flushPointSteps(List<Step> steps, List<PointStep> pointSteps) {
+        if (pointSteps.isEmpty()) return;
+        List<PointStep> chain = List.copyOf(pointSteps);
+        pointSteps.clear();
+        PointPipeline pipeline = imageProcessor.pipeline();
+        for (PointStep step : chain) pipeline = step.pipeline().apply(pipeline);
+        PointOperation operation = pipeline.toOperation();
+        steps.add(new Step(img -> imageProcessor.applyPointOperation(img, operation), img -> {
+            for (PointStep step : chain) img = step.highDepth().apply(img);
+            return img;
+        }, operation));
+    }
+
+    private PointStep parsePointStep(String name, String[] args) {
+        try {
+            return switch (name) {
+                case "add" -> {
+                    int[] c = intChannels(name, args);
+                    yield new PointStep(p -> p.add(c[0], c[1], c[2]), img -> imageProcessor.add(img,
+                            toSampleUnits(c[0], img), toSampleUnits(c[1], img), toSampleUnits(c[2], img)));
+                }
+                case "subtract" -> {
+                    int[] c = intChannels(name, args);
+                    yield new PointStep(p -> p.subtract(c[0], c[1], c[2]), img -> imageProcessor.subtract(img,
+                            toSampleUnits(c[0], img), toSampleUnits(c[1], img), toSampleUnits(c[2], img)));
+                }
+                case "multiply" -> {
+                    double[] c = doubleChannels(name, args);
+                    yield new PointStep(p -> p.multiply(c[0], c[1], c[2]), img -> imageProcessor.multiply(img, c[0], c[1], c[2]));
+                }
+                case "divide" -> {
+                    double[] c = doubleChannels(name, args);
+                    if (c[0] == 0 || c[1] == 0 || c[2] == 0) throw new IllegalArgumentException("Dzielnik nie może być zerem");
+                    yield new PointStep(p -> p.divide(c[0], c[1], c[2]), img -> imageProcessor.divide(img, c[0], c[1], c[2]));
+                }
+                case "brightness" -> {
+                    int delta = intArg(args, 0);
+                    yield new PointStep(p -> p.changeBrightness(delta),
+                            img -> imageProcessor.changeBrightness(img, toSampleUnits(delta, img)));
+                }
+                case "gray_avg" -> new PointStep(PointPipeline::toGrayscaleAverage, imageProcessor::toGrayscaleAverage);
+                case "gray_lum" -> new PointStep(PointPipeline::toGrayscaleLuminosity, imageProcessor::toGrayscaleLuminosity);
+                default -> null;
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            throw new IllegalArgumentException("Niepoprawne parametry operacji: " + name);
+        }
+    }
+
+    private Step parseStep(String name, String[] args) {
+        if (name.equals("stretch")) {
+            return new Step(img -> imageProcessor.stretchHistogram(HighDepthImage.fromBufferedImage(img)).toBufferedImage(true),
+                    imageProcessor::stretchHistogram, null);
+        }
+        if (name.equals("equalize")) {
+            return new Step(img -> imageProcessor.equalizeHistogram(HighDepthImage.fromBufferedImage(img)).toBufferedImage(true),
+                    imageProcessor::equalizeHistogram, null);
+        }
+        return new Step(parseImageStep(name, args), null, null);
+    }
+
+    private UnaryOperator<BufferedImage> parseImageStep(String name, String[] args) {
+        try {
+            return switch (name) {
+                case "conv" -> {
+                    int kw = Integer.parseInt(args[0]);
+                    int kh = Integer.parseInt(args[1]);
+                    if (kw < 1 || kh < 1 || args.length != 2 + kw * kh) throw new IllegalArgumentException("Niepoprawne parametry operacji: " + name);
+                    float[] data = new float[kw * kh];
+                    for (int i = 0; i < data.length; i++) data[i] = Float.parseFloat(args[2 + i]);
+                    Kernel kernel = new Kernel(kw, kh, data);
+                    yield img -> imageProcessor.convolve(img, kernel);
+                }
+                case "smooth" -> imageProcessor::smoothingFilter;
+                case "median" -> {
+                    if (args.length == 0) yield imageProcessor::medianFilter;
+                    int radius = intArg(args, 0);
+                    if (radius < 1) throw new IllegalArgumentException("Promień musi być dodatni");
+                    yield img -> imageProcessor.medianFilter(img, radius);
+                }
+                case "sobel" -> {
+                    if (args.length == 0) yield imageProcessor::sobelFilter;
+                    ImageProcessor.GradientOutput output = switch (args[0]) {
+                        case "l2" -> ImageProcessor.GradientOutput.L2;
+                        case "l1" -> ImageProcessor.GradientOutput.L1;
+                        case "dir" -> ImageProcessor.GradientOutput.DIRECTION;
+                        default -> throw new IllegalArgumentException("Niepoprawne parametry operacji: " + name);
+                    };
+                    yield img -> imageProcessor.sobelFilter(img, output);
+                }
+                case "sharpen" -> imageProcessor::sharpenFilter;
+                case "gauss" -> {
+                    if (args.length == 0) yield imageProcessor::gaussianBlur;
+                    int radius = intArg(args, 0);
+                    if (radius < 1) throw new IllegalArgumentException("Promień musi być dodatni");
+                    yield img -> imageProcessor.gaussianBlur(img, radius);
+                }
+                case "box" -> {
+                    int radius = intArg(args, 0);
+                    if (radius < 1) throw new IllegalArgumentException("Promień musi być dodatni");
+                    yield img -> imageProcessor.boxBlur(img, radius);
+                }
+                default -> throw new IllegalArgumentException("Nieznana operacja: " + name);
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            throw new IllegalArgumentException("Niepoprawne parametry operacji: " + name);
+        }
+    }
+
+    private static int toSampleUnits(int value, HighDepthImage img) {
+        return (int) Math.round(value * img.getMaxval() / 255.0);
+    }
+
+    private static int intArg(String[] args, int i) {
+        return Integer.parseInt(args[i]);
+    }
+
+    private static int[] intChannels(String name, String[] args) {
+        checkChannels(name, args);
+        int r = intArg(args, 0);
+        return args.length == 1 ? new int[]{r, r, r} : new int[]{r, intArg(args, 1), intArg(args, 2)};
+    }
+
+    private static double[] doubleChannels(String name, String[] args) {
+        checkChannels(name, args);
+        double r = Double.parseDouble(args[0]);
+        return args.length == 1 ? new double[]{r, r, r} : new double[]{r, Double.parseDouble(args[1]), Double.parseDouble(args[2])};
+    }
+
+    private static void checkChannels(String name, String[] args) {
+        if (args.length != 1 && args.length != 3) {
+            throw new IllegalArgumentException("Operacja " + name + " wymaga jednej wartości (wszystkie kanały) albo trzech (r:g:b)");
+        }
+    }
+
+    private static String stripExt(String name) {
+        int i = name.lastIndexOf('.');
+        return i>0 ? name.substring(0,i) : name;
+    }
+
+    private record Step(UnaryOperator<BufferedImage> image, UnaryOperator<HighDepthImage> highDepth, PointOperation point) {}
+
+    private record PointStep(UnaryOperator<PointPipeline> pipeline, UnaryOperator<HighDepthImage> highDepth) {}
+}
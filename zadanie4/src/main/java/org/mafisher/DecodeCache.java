@@ -0,0 +1,148 @@
+package org.mafisher;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+
+final class DecodeCache<V> {
+
+    interface Decoder<V> {
+        V decode(File file, boolean linearScale) throws Exception;
+    }
+
+    private record Key(String path, long modified, boolean linearScale) {
+        static Key of(File file, boolean linearScale) {
+            return new Key(file.getAbsolutePath(), file.lastModified(), linearScale);
+        }
+    }
+
+    private static final class Pending<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final int generation;
+        boolean started;
+        boolean requested;
+
+        Pending(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    private final Decoder<V> decoder;
+    private final ToLongFunction<V> weigher;
+    private final long maxBytes;
+    private final ExecutorService foreground = Executors.newSingleThreadExecutor(DecodeCache::daemon);
+    private final ExecutorService background = Executors.newSingleThreadExecutor(DecodeCache::daemon);
+    private final LinkedHashMap<Key, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Pending<V>> pending = new HashMap<>();
+    private Set<Key> wanted = Set.of();
+    private Key current;
+    private int generation;
+    private long bytes;
+
+    DecodeCache(long maxBytes, Decoder<V> decoder, ToLongFunction<V> weigher) {
+        this.maxBytes = maxBytes;
+        this.decoder = decoder;
+        this.weigher = weigher;
+    }
+
+    synchronized Future<V> get(File file, boolean linearScale) {
+        Key key = Key.of(file, linearScale);
+        current = key;
+        V cached = entries.get(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        Pending<V> task = pending.get(key);
+        if (task == null) {
+            task = new Pending<>(generation);
+            pending.put(key, task);
+        }
+        if (!task.started && !task.requested) {
+            task.requested = true;
+            foreground.execute(decode(key, file, task, false));
+        }
+        return task.future;
+    }
+
+    synchronized void prefetch(List<File> files, boolean linearScale) {
+        Set<Key> keys = new HashSet<>();
+        for (File file : files) {
+            Key key = Key.of(file, linearScale);
+            keys.add(key);
+            if (entries.containsKey(key) || pending.containsKey(key)) continue;
+            Pending<V> task = new Pending<>(generation);
+            pending.put(key, task);
+            background.execute(decode(key, file, task, true));
+        }
+        wanted = keys;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        pending.clear();
+        bytes = 0;
+        wanted = Set.of();
+        generation++;
+    }
+
+    private Runnable decode(Key key, File file, Pending<V> task, boolean prefetch) {
+        return () -> {
+            synchronized (this) {
+                if (task.started) return;
+                if (!prefetch && !key.equals(current)) task.requested = false;
+                if (!task.requested && !wanted.contains(key)) {
+                    pending.remove(key, task);
+                    task.future.cancel(false);
+                    return;
+                }
+                if (!prefetch && !task.requested) {
+                    background.execute(decode(key, file, task, true));
+                    return;
+                }
+                task.started = true;
+            }
+            try {
+                V value = decoder.decode(file, key.linearScale());
+                synchronized (this) {
+                    pending.remove(key, task);
+                    if (value != null && task.generation == generation) store(key, value);
+                }
+                task.future.complete(value);
+            } catch (Throwable ex) {
+                synchronized (this) {
+                    pending.remove(key, task);
+                }
+                task.future.completeExceptionally(ex);
+            }
+        };
+    }
+
+    private void store(Key key, V value) {
+        long size = weigher.applyAsLong(value);
+        if (size > maxBytes) return;
+        V previous = entries.put(key, value);
+        if (previous != null) bytes -= weigher.applyAsLong(previous);
+        bytes += size;
+        Iterator<Map.Entry<Key, V>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, V> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            bytes -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private static Thread daemon(Runnable task) {
+        Thread thread = new Thread(task, "image-decoder");
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,74 @@
+package org.mafisher;
+
+final class FFT {
+
+    private final int n;
+    private final int[] reversed;
+    private final float[] cos;
+    private final float[] sin;
+
+    FFT(int n) {
+        if (n < 1 || Integer.bitCount(n) != 1) throw new IllegalArgumentException("Rozmiar FFT musi być potęgą dwójki: " + n);
+        this.n = n;
+        this.reversed = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++) reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        this.cos = new float[n / 2];
+        this.sin = new float[n / 2];
+        for (int k = 0; k < n / 2; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / n);
+            sin[k] = (float) Math.sin(2 * Math.PI * k / n);
+        }
+    }
+
+    int size() {
+        return n;
+    }
+
+    void transform(float[] re, float[] im, int offset, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                float t = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = t;
+                t = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = t;
+            }
+        }
+        float sign = inverse ? 1 : -1;
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int i = offset; i < offset + n; i += len) {
+                for (int j = 0; j < half; j++) {
+                    float wr = cos[j * step];
+                    float wi = sign * sin[j * step];
+                    int a = i + j, b = a + half;
+                    float xr = re[b] * wr - im[b] * wi;
+                    float xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    void transform2D(float[] re, float[] im, float[] columnRe, float[] columnIm, boolean inverse) {
+        for (int row = 0; row < n * n; row += n) transform(re, im, row, inverse);
+        for (int x = 0; x < n; x++) {
+            for (int y = 0, i = x; y < n; y++, i += n) {
+                columnRe[y] = re[i];
+                columnIm[y] = im[i];
+            }
+            transform(columnRe, columnIm, 0, inverse);
+            for (int y = 0, i = x; y < n; y++, i += n) {
+                re[i] = columnRe[y];
+                im[i] = columnIm[y];
+            }
+        }
+    }
+}
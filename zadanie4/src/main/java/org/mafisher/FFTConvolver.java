@@ -0,0 +1,110 @@
+package org.mafisher;
+
+final class FFTConvolver {
+
+    private static final int MAX_TILE = 1024;
+    private static final float EPSILON = 1e-2f;
+
+    private final FFT fft;
+    private final int tile;
+    private final int kw;
+    private final int kh;
+    private final int ox;
+    private final int oy;
+    private final float[] kernelRe;
+    private final float[] kernelIm;
+
+    FFTConvolver(float[] data, int kw, int kh, int ox, int oy, int tile) {
+        this.fft = new FFT(tile);
+        this.tile = tile;
+        this.kw = kw;
+        this.kh = kh;
+        this.ox = ox;
+        this.oy = oy;
+        this.kernelRe = new float[tile * tile];
+        this.kernelIm = new float[tile * tile];
+        for (int j = 0; j < kh; j++) {
+            for (int i = 0; i < kw; i++) kernelRe[j * tile + i] = data[j * kw + i];
+        }
+        fft.transform2D(kernelRe, kernelIm, new float[tile], new float[tile], false);
+        float scale = 1f / (tile * tile);
+        for (int i = 0; i < kernelRe.length; i++) {
+            kernelRe[i] *= scale;
+            kernelIm[i] *= -scale;
+        }
+    }
+
+    static int bestTile(int kw, int kh, int w, int h) {
+        int k = Math.max(kw, kh);
+        int smallest = Integer.highestOneBit(k) << 1;
+        int largest = Math.max(smallest, Math.min(MAX_TILE, Integer.highestOneBit(Math.max(w, h) + k - 1) << 1));
+        int best = smallest;
+        for (int t = smallest; t <= largest; t <<= 1) {
+            if (costPerPixel(t, kw, kh) < costPerPixel(best, kw, kh)) best = t;
+        }
+        return best;
+    }
+
+    static double costPerPixel(int tile, int kw, int kh) {
+        double valid = (double) (tile - kw + 1) * (tile - kh + 1);
+        double transforms = 4.0 * tile * tile * (2 * Integer.numberOfTrailingZeros(tile)) * 5;
+        return transforms / (3 * valid);
+    }
+
+    int tileRows(int h) {
+        return (h + tile - kh) / (tile - kh + 1);
+    }
+
+    void rows(int[] in, int[] out, int w, int h, int fromTile, int toTile, ImageProcessor.BorderMode border) {
+        int size = tile * tile;
+        float[] rgRe = new float[size];
+        float[] rgIm = new float[size];
+        float[] bRe = new float[size];
+        float[] bIm = new float[size];
+        float[] columnRe = new float[tile];
+        float[] columnIm = new float[tile];
+        int validW = tile - kw + 1;
+        int validH = tile - kh + 1;
+
+        for (int ty = fromTile; ty < toTile; ty++) {
+            int y0 = ty * validH;
+            for (int x0 = 0; x0 < w; x0 += validW) {
+                for (int v = 0; v < tile; v++) {
+                    int sy = ImageProcessor.borderIndex(y0 + v - oy, h, border);
+                    for (int u = 0, i = v * tile; u < tile; u++, i++) {
+                        int sx = ImageProcessor.borderIndex(x0 + u - ox, w, border);
+                        int rgb = sx < 0 || sy < 0 ? 0 : in[sy * w + sx];
+                        rgRe[i] = (rgb >> 16) & 0xFF;
+                        rgIm[i] = (rgb >> 8) & 0xFF;
+                        bRe[i] = rgb & 0xFF;
+                        bIm[i] = 0;
+                    }
+                }
+                fft.transform2D(rgRe, rgIm, columnRe, columnIm, false);
+                fft.transform2D(bRe, bIm, columnRe, columnIm, false);
+                for (int i = 0; i < size; i++) {
+                    float kr = kernelRe[i], ki = kernelIm[i];
+                    float re = rgRe[i] * kr - rgIm[i] * ki;
+                    rgIm[i] = rgRe[i] * ki + rgIm[i] * kr;
+                    rgRe[i] = re;
+                    re = bRe[i] * kr - bIm[i] * ki;
+                    bIm[i] = bRe[i] * ki + bIm[i] * kr;
+                    bRe[i] = re;
+                }
+                fft.transform2D(rgRe, rgIm, columnRe, columnIm, true);
+                fft.transform2D(bRe, bIm, columnRe, columnIm, true);
+
+                for (int y = 0; y < validH && y0 + y < h; y++) {
+                    int o = (y0 + y) * w + x0;
+                    for (int x = 0, i = y * tile; x < validW && x0 + x < w; x++, i++) {
+                        out[o + x] = (level(rgRe[i]) << 16) | (level(rgIm[i]) << 8) | level(bRe[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int level(float v) {
+        return Math.max(0, Math.min(255, (int) Math.floor(v + EPSILON)));
+    }
+}
@@ -0,0 +1,72 @@
+package org.mafisher;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+public class HighDepthImage {
+
+    private final int width;
+    private final int height;
+    private final int maxval;
+    private final short[] red;
+    private final short[] green;
+    private final short[] blue;
+
+    public HighDepthImage(int width, int height, int maxval) {
+        if (maxval <= 0 || maxval > 65535) throw new IllegalArgumentException("Niepoprawna wartość maxval: " + maxval);
+        this.width = width;
+        this.height = height;
+        this.maxval = maxval;
+        this.red = new short[width * height];
+        this.green = new short[width * height];
+        this.blue = new short[width * height];
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getMaxval() { return maxval; }
+
+    public short[] getRed() { return red; }
+
+    public short[] getGreen() { return green; }
+
+    public short[] getBlue() { return blue; }
+
+    public int[] getSamples(int x, int y) {
+        int i = y * width + x;
+        return new int[]{red[i] & 0xFFFF, green[i] & 0xFFFF, blue[i] & 0xFFFF};
+    }
+
+    public static HighDepthImage fromBufferedImage(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        HighDepthImage out = new HighDepthImage(w, h, 255);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            int i = y * w;
+            for (int x = 0; x < w; x++, i++) {
+                int rgb = row[x];
+                out.red[i] = (short) ((rgb >> 16) & 0xFF);
+                out.green[i] = (short) ((rgb >> 8) & 0xFF);
+                out.blue[i] = (short) (rgb & 0xFF);
+            }
+        }
+        return out;
+    }
+
+    public BufferedImage toBufferedImage(boolean linearScale) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        int[] scale = PPMImage.scaleTable(maxval, 65536, linearScale);
+        for (int i = 0; i < pixels.length; i++) {
+            int r = scale[red[i] & 0xFFFF];
+            int g = scale[green[i] & 0xFFFF];
+            int b = scale[blue[i] & 0xFFFF];
+            pixels[i] = (r << 16) | (g << 8) | b;
+        }
+        return img;
+    }
+}
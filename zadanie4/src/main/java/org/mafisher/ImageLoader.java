@@ -1,9 +1,49 @@
 package org.mafisher;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
 public interface ImageLoader {
     BufferedImage load(File file, boolean linearScale) throws IOException;
-}
\ No newline at end of file
+
+    default void stream(File file, boolean linearScale, int stripRows, StripConsumer consumer) throws IOException {
+        BufferedImage img = load(file, linearScale);
+        if (img == null) throw new IOException("Nieobsługiwany format pliku");
+        int w = img.getWidth();
+        int h = img.getHeight();
+        consumer.begin(w, h);
+        int[] strip = new int[w * Math.min(stripRows, h)];
+        for (int y = 0; y < h; y += stripRows) {
+            int rows = Math.min(stripRows, h - y);
+            img.getRGB(0, y, w, rows, strip, 0, w);
+            consumer.accept(y, rows, strip);
+        }
+    }
+
+    default BufferedImage loadThumbnail(File file, boolean linearScale, int maxSize) throws IOException {
+        BufferedImage img = load(file, linearScale);
+        return img == null ? null : fitThumbnail(img, maxSize);
+    }
+
+    static BufferedImage fitThumbnail(BufferedImage img, int maxSize) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        double factor = Math.min(1.0, maxSize / (double) Math.max(w, h));
+        int targetW = Math.max(1, (int) Math.round(w * factor));
+        int targetH = Math.max(1, (int) Math.round(h * factor));
+        BufferedImage current = img;
+        while (current.getType() != BufferedImage.TYPE_INT_RGB || w != targetW || h != targetH) {
+            w = Math.max(targetW, w / 2);
+            h = Math.max(targetH, h / 2);
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        }
+        return current;
+    }
+}
@@ -6,14 +6,37 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
-import java.util.function.Consumer;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
 
 class ImagePanel extends JComponent {
+    private static final int VIEWPORT_MARGIN = 256;
+    private static final int PROBE_DELAY_MS = 16;
+
     private BufferedImage image;
+    private TilePyramid pyramid;
+    private HighDepthImage source;
     private double scale = 1.0;
     private Point dragStart;
     private int offsetX = 0, offsetY = 0;
-    private Consumer<int[]> pixelInfoConsumer;
+    private PixelListener pixelListener;
+    private final Timer probeTimer;
+    private int probeX = -1, probeY = -1;
+    private int probeSize = 1;
+    private int[] probePixels;
+    private Raster probeRaster;
+    private final int[] probeSample = new int[4];
+    private BufferedImage preview;
+    private Rectangle previewRegion;
+    private BufferedImage viewport;
+    private Rectangle viewportBounds;
+    private double viewportScale;
+    private TilePyramid viewportPyramid;
+    private SwingWorker<BufferedImage, Void> viewportWorker;
+    private Rectangle pendingBounds;
+    private double pendingScale;
+    private int viewportGeneration;
 
     ImagePanel() {
         setBackground(Color.DARK_GRAY);
@@ -38,13 +61,13 @@ class ImagePanel extends JComponent {
                     offsetY += p.y - dragStart.y;
                     dragStart = p;
                     repaint();
-                    updatePixelInfo(e.getPoint());
+                    probe(e.getX(), e.getY());
                 }
             }
 
             @Override
             public void mouseMoved(MouseEvent e) {
-                updatePixelInfo(e.getPoint());
+                probe(e.getX(), e.getY());
             }
 
             @Override
@@ -62,7 +85,7 @@ class ImagePanel extends JComponent {
                 offsetX = (int) Math.round(p.x - px * scale);
                 offsetY = (int) Math.round(p.y - py * scale);
                 repaint();
-                updatePixelInfo(e.getPoint());
+                probe(e.getX(), e.getY());
             }
 
             @Override
@@ -72,13 +95,27 @@ class ImagePanel extends JComponent {
                 }
             }
         };
+        probeTimer = new Timer(PROBE_DELAY_MS, e -> firePixel());
+        probeTimer.setRepeats(false);
         addMouseListener(ma);
         addMouseMotionListener(ma);
         addMouseWheelListener(ma);
     }
 
+    void setImage(HighDepthImage src, boolean linearScale) {
+        setImage(src.toBufferedImage(linearScale));
+        this.source = src;
+    }
+
+    BufferedImage getImage() {
+        return image;
+    }
+
     void setImage(BufferedImage img) {
         this.image = img;
+        rebuildPyramid();
+        this.source = null;
+        this.preview = null;
         scale = Math.min(1.0, Math.min(getWidth() / (double) Math.max(1,img.getWidth()), getHeight() / (double) Math.max(1,img.getHeight())));
         offsetX = (getWidth() - (int)(img.getWidth()*scale))/2;
         offsetY = (getHeight() - (int)(img.getHeight()*scale))/2;
@@ -86,6 +123,117 @@ class ImagePanel extends JComponent {
         repaint();
     }
 
+    void replaceImage(BufferedImage img, HighDepthImage src) {
+        if (img == image) {
+            this.source = src;
+            if (preview != null) {
+                this.preview = null;
+                repaint();
+            }
+            return;
+        }
+        if (image == null || image.getWidth() != img.getWidth() || image.getHeight() != img.getHeight()) {
+            setImage(img);
+        } else {
+            this.image = img;
+            this.preview = null;
+            rebuildPyramid();
+            repaint();
+        }
+        this.source = src;
+    }
+
+    private void rebuildPyramid() {
+        probePixels = PixelArrays.packed(image);
+        probeRaster = image.getColorModel() instanceof ComponentColorModel && image.getRaster().getNumBands() >= 3
+                && image.getRaster().getTransferType() == DataBuffer.TYPE_BYTE ? image.getRaster() : null;
+        if (pyramid != null) pyramid.dispose();
+        pyramid = new TilePyramid(image);
+        invalidateViewport();
+        pyramid.start(() -> {
+            invalidateViewport();
+            repaint();
+        });
+    }
+
+    private void invalidateViewport() {
+        if (viewportWorker != null) viewportWorker.cancel(true);
+        viewportWorker = null;
+        viewport = null;
+        pendingBounds = null;
+        viewportGeneration++;
+    }
+
+    private void requestViewport(Rectangle needed) {
+        if (pendingBounds != null && pendingScale == scale && pendingBounds.contains(needed)) return;
+        if (viewportWorker != null) viewportWorker.cancel(true);
+        int generation = ++viewportGeneration;
+        TilePyramid source = pyramid;
+        double renderScale = scale;
+        Rectangle bounds = new Rectangle(needed);
+        bounds.grow(VIEWPORT_MARGIN, VIEWPORT_MARGIN);
+        bounds = bounds.intersection(new Rectangle(0, 0, (int) Math.ceil(image.getWidth() * scale), (int) Math.ceil(image.getHeight() * scale)));
+        Rectangle target = bounds;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        pendingBounds = target;
+        pendingScale = renderScale;
+
+        viewportWorker = new SwingWorker<>() {
+            @Override
+            protected BufferedImage doInBackground() {
+                BufferedImage img = gc != null ? gc.createCompatibleImage(target.width, target.height)
+                        : new BufferedImage(target.width, target.height, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = img.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation(renderScale));
+                g.translate(-target.x, -target.y);
+                g.setClip(target);
+                source.paint(g, 0, 0, renderScale);
+                g.dispose();
+                return img;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || generation != viewportGeneration) return;
+                try {
+                    viewport = get();
+                    viewportBounds = target;
+                    viewportScale = renderScale;
+                    viewportPyramid = source;
+                    viewportWorker = null;
+                    repaint();
+                } catch (Exception ignored) {
+                }
+            }
+        };
+        viewportWorker.execute();
+    }
+
+    private static Object interpolation(double scale) {
+        return scale < 2.0 ? RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+    }
+
+    void setPreview(BufferedImage preview, Rectangle region) {
+        this.preview = preview;
+        this.previewRegion = region;
+        repaint();
+    }
+
+    double getScale() {
+        return scale;
+    }
+
+    Rectangle getVisibleImageRegion() {
+        if (image == null) return null;
+        Rectangle view = getVisibleRect();
+        int x0 = Math.max(0, (int) Math.floor((view.x - offsetX) / scale));
+        int y0 = Math.max(0, (int) Math.floor((view.y - offsetY) / scale));
+        int x1 = Math.min(image.getWidth(), (int) Math.ceil((view.x + view.width - offsetX) / scale));
+        int y1 = Math.min(image.getHeight(), (int) Math.ceil((view.y + view.height - offsetY) / scale));
+        if (x1 <= x0 || y1 <= y0) return null;
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
     void fitToWindow() {
         if (image == null) return;
         scale = Math.min(getWidth() / (double) image.getWidth(), getHeight() / (double) image.getHeight());
@@ -116,41 +264,101 @@ class ImagePanel extends JComponent {
             return;
         }
 
-        if (scale < 2.0) {
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        } else {
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        }
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation(scale));
 
         int imgW = image.getWidth();
         int imgH = image.getHeight();
         int drawW = (int)Math.round(imgW * scale);
         int drawH = (int)Math.round(imgH * scale);
 
-        g.drawImage(image, offsetX, offsetY, drawW, drawH, null);
+        Rectangle view = getVisibleRect();
+        Rectangle needed = new Rectangle(view.x - offsetX, view.y - offsetY, view.width, view.height)
+                .intersection(new Rectangle(0, 0, drawW, drawH));
+        boolean cached = viewport != null && viewportPyramid == pyramid;
+        if (cached && viewportScale == scale && viewportBounds.contains(needed)) {
+            g.drawImage(viewport, offsetX + viewportBounds.x, offsetY + viewportBounds.y, null);
+        } else if (!needed.isEmpty()) {
+            if (cached && viewportScale != scale) {
+                double f = scale / viewportScale;
+                int vx = offsetX + (int) Math.round(viewportBounds.x * f);
+                int vy = offsetY + (int) Math.round(viewportBounds.y * f);
+                g.drawImage(viewport, vx, vy, (int) Math.round(viewportBounds.width * f), (int) Math.round(viewportBounds.height * f), null);
+            } else {
+                pyramid.paint(g, offsetX, offsetY, scale);
+            }
+            requestViewport(needed);
+        }
+        if (preview != null) {
+            int px = offsetX + (int) Math.round(previewRegion.x * scale);
+            int py = offsetY + (int) Math.round(previewRegion.y * scale);
+            int pw = offsetX + (int) Math.round((previewRegion.x + previewRegion.width) * scale) - px;
+            int ph = offsetY + (int) Math.round((previewRegion.y + previewRegion.height) * scale) - py;
+            g.drawImage(preview, px, py, pw, ph, null);
+        }
 
         g.setColor(Color.LIGHT_GRAY);
         g.drawRect(offsetX, offsetY, Math.max(0, drawW-1), Math.max(0, drawH-1));
         g.dispose();
     }
 
-    void setPixelInfoConsumer(Consumer<int[]> consumer) {
-        this.pixelInfoConsumer = consumer;
+    void setPixelListener(PixelListener listener) {
+        this.pixelListener = listener;
     }
 
-    private void updatePixelInfo(Point mousePoint) {
-        if (pixelInfoConsumer == null || image == null) return;
-        int imgX = (int) ((mousePoint.x - offsetX) / scale);
-        int imgY = (int) ((mousePoint.y - offsetY) / scale);
+    void setProbeSize(int size) {
+        this.probeSize = Math.max(1, size);
+        if (probeX >= 0) probeTimer.restart();
+    }
 
-        if (imgX >= 0 && imgY >= 0 && imgX < image.getWidth() && imgY < image.getHeight()) {
-            int rgb = image.getRGB(imgX, imgY);
-            int r = (rgb >> 16) & 0xFF;
-            int g = (rgb >> 8) & 0xFF;
-            int b = rgb & 0xFF;
-            pixelInfoConsumer.accept(new int[]{r, g, b});
-        } else {
-            pixelInfoConsumer.accept(new int[]{-1, -1, -1});
+    int getProbeSize() {
+        return probeSize;
+    }
+
+    HighDepthImage getSource() {
+        return source;
+    }
+
+    private void probe(int mouseX, int mouseY) {
+        if (pixelListener == null || image == null) return;
+        int x = (int) Math.floor((mouseX - offsetX) / scale);
+        int y = (int) Math.floor((mouseY - offsetY) / scale);
+        boolean inside = x >= 0 && y >= 0 && x < image.getWidth() && y < image.getHeight();
+        probeX = inside ? x : -1;
+        probeY = inside ? y : -1;
+        if (!probeTimer.isRunning()) probeTimer.start();
+    }
+
+    private void firePixel() {
+        if (pixelListener == null || image == null) return;
+        if (probeX < 0 || probeX >= image.getWidth() || probeY >= image.getHeight()) {
+            pixelListener.onPixel(-1, -1, 0);
+            return;
+        }
+        pixelListener.onPixel(probeX, probeY, probeSize == 1 ? pixel(probeX, probeY) : meanRGB(probeX, probeY, probeSize));
+    }
+
+    private int meanRGB(int x, int y, int size) {
+        int x0 = Math.max(0, x - size / 2), x1 = Math.min(image.getWidth(), x0 + size);
+        int y0 = Math.max(0, y - size / 2), y1 = Math.min(image.getHeight(), y0 + size);
+        int r = 0, g = 0, b = 0;
+        for (int yy = y0; yy < y1; yy++) {
+            for (int xx = x0; xx < x1; xx++) {
+                int rgb = pixel(xx, yy);
+                r += (rgb >> 16) & 0xFF;
+                g += (rgb >> 8) & 0xFF;
+                b += rgb & 0xFF;
+            }
+        }
+        int n = (x1 - x0) * (y1 - y0);
+        return ((r / n) << 16) | ((g / n) << 8) | (b / n);
+    }
+
+    private int pixel(int x, int y) {
+        if (probePixels != null) return probePixels[y * image.getWidth() + x] & 0xFFFFFF;
+        if (probeRaster != null) {
+            probeRaster.getPixel(x, y, probeSample);
+            return (probeSample[0] << 16) | (probeSample[1] << 8) | probeSample[2];
         }
+        return image.getRGB(x, y) & 0xFFFFFF;
     }
-}
\ No newline at end of file
+}
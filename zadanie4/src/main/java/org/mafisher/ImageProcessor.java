@@ -1,29 +1,94 @@
 package org.mafisher;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
 
 public class ImageProcessor {
 
+    public enum BorderMode {
+        CLAMP, REFLECT, WRAP, ZERO
+    }
+
+    public enum GradientOutput {
+        L2, L1, DIRECTION
+    }
+
+    public enum ConvolutionMode {
+        AUTO, SPATIAL, FFT
+    }
+
+    public static final Kernel SHARPEN = new Kernel(3, 3, new float[]{
+            0, -1, 0,
+            -1, 5, -1,
+            0, -1, 0});
+    public static final Kernel GAUSSIAN_3X3 = new Kernel(3, 3, new float[]{
+            1 / 16f, 2 / 16f, 1 / 16f,
+            2 / 16f, 4 / 16f, 2 / 16f,
+            1 / 16f, 2 / 16f, 1 / 16f});
+    public static final Kernel SOBEL_X = new Kernel(3, 3, new float[]{
+            -1, 0, 1,
+            -2, 0, 2,
+            -1, 0, 1});
+    public static final Kernel SOBEL_Y = new Kernel(3, 3, new float[]{
+            -1, -2, -1,
+            0, 0, 0,
+            1, 2, 1});
+
+    private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+    private static final int MIN_BAND_PIXELS = 1 << 14;
+    private static final int BANDS_PER_WORKER = 4;
+    private static final int CANCEL_CHECK_SAMPLES = 1 << 16;
+    private static final int GAUSS_BITS = 10;
+    private static final int MAX_KERNEL_BITS = 16;
+    private static final int SEPARABLE_BITS = 20;
+    private static final int[] SQRT_TABLE = sqrtTable();
+    private static final double LUMA_WEIGHT_R = 0.299;
+    private static final double LUMA_WEIGHT_G = 0.587;
+    private static final double LUMA_WEIGHT_B = 0.114;
+    private static final double[] LUMA_R = scaleTable(LUMA_WEIGHT_R);
+    private static final double[] LUMA_G = scaleTable(LUMA_WEIGHT_G);
+    private static final double[] LUMA_B = scaleTable(LUMA_WEIGHT_B);
+    private static final double SPATIAL_COST_PER_TAP = 1.0;
+
+    private final ForkJoinPool pool;
+
+    public ImageProcessor() {
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    public ImageProcessor(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Niepoprawny poziom równoległości: " + parallelism);
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+
     private static int clamp(int val) {
         return Math.max(0, Math.min(255, val));
     }
 
-    public BufferedImage add(BufferedImage src, int valueR, int valueG, int valueB) {
-        int w = src.getWidth();
-        int h = src.getHeight();
-        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    static int luminosity(int r, int g, int b) {
+        return (int)(LUMA_R[r] + LUMA_G[g] + LUMA_B[b]);
+    }
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = src.getRGB(x, y);
-                int r = ((rgb >> 16) & 0xFF) + valueR;
-                int g = ((rgb >> 8) & 0xFF) + valueG;
-                int b = (rgb & 0xFF) + valueB;
-                result.setRGB(x, y, (clamp(r) << 16) | (clamp(g) << 8) | clamp(b));
-            }
-        }
-        return result;
+    static int highDepthLuminosity(int r, int g, int b) {
+        return (int)(LUMA_WEIGHT_R * r + LUMA_WEIGHT_G * g + LUMA_WEIGHT_B * b);
+    }
+
+    private static double[] scaleTable(double factor) {
+        double[] table = new double[256];
+        for (int v = 0; v < 256; v++) table[v] = factor * v;
+        return table;
+    }
+
+    private static int clamp(long val) {
+        return (int) Math.max(0, Math.min(255, val));
+    }
+
+    public BufferedImage add(BufferedImage src, int valueR, int valueG, int valueB) {
+        return applyPointOperation(src, addOperation(valueR, valueG, valueB));
     }
 
     public BufferedImage subtract(BufferedImage src, int valueR, int valueG, int valueB) {
@@ -31,20 +96,7 @@ public class ImageProcessor {
     }
 
     public BufferedImage multiply(BufferedImage src, double factorR, double factorG, double factorB) {
-        int w = src.getWidth();
-        int h = src.getHeight();
-        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = src.getRGB(x, y);
-                int r = (int)(((rgb >> 16) & 0xFF) * factorR);
-                int g = (int)(((rgb >> 8) & 0xFF) * factorG);
-                int b = (int)((rgb & 0xFF) * factorB);
-                result.setRGB(x, y, (clamp(r) << 16) | (clamp(g) << 8) | clamp(b));
-            }
-        }
-        return result;
+        return applyPointOperation(src, multiplyOperation(factorR, factorG, factorB));
     }
 
     public BufferedImage divide(BufferedImage src, double divisorR, double divisorG, double divisorB) {
@@ -58,213 +110,968 @@ public class ImageProcessor {
         return add(src, delta, delta, delta);
     }
 
+    public BufferedImage changeBrightness(BufferedImage src, int delta, BooleanSupplier cancelled) {
+        return applyPointOperation(src, brightnessOperation(delta), cancelled);
+    }
+
     public BufferedImage toGrayscaleAverage(BufferedImage src) {
-        int w = src.getWidth();
-        int h = src.getHeight();
-        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        return applyPointOperation(src, grayscaleAverageOperation());
+    }
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = src.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (r + g + b) / 3;
-                result.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+    public BufferedImage toGrayscaleLuminosity(BufferedImage src) {
+        return applyPointOperation(src, grayscaleLuminosityOperation());
+    }
+
+    public PointPipeline pipeline(BufferedImage src) {
+        return new PointPipeline(this, src);
+    }
+
+    public PointPipeline pipeline() {
+        return new PointPipeline(this, null);
+    }
+
+    public PointOperation addOperation(int valueR, int valueG, int valueB) {
+        int[] r = new int[256], g = new int[256], b = new int[256];
+        for (int v = 0; v < 256; v++) {
+            r[v] = clamp(v + valueR);
+            g[v] = clamp(v + valueG);
+            b[v] = clamp(v + valueB);
+        }
+        return lookupOperation(r, g, b);
+    }
+
+    public PointOperation multiplyOperation(double factorR, double factorG, double factorB) {
+        int[] r = new int[256], g = new int[256], b = new int[256];
+        for (int v = 0; v < 256; v++) {
+            r[v] = clamp((int)(v * factorR));
+            g[v] = clamp((int)(v * factorG));
+            b[v] = clamp((int)(v * factorB));
+        }
+        return lookupOperation(r, g, b);
+    }
+
+    public PointOperation brightnessOperation(int delta) {
+        return addOperation(delta, delta, delta);
+    }
+
+    public PointOperation grayscaleAverageOperation() {
+        return (pixels, offset, length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                int rgb = pixels[i];
+                int gray = (((rgb >> 16) & 0xFF) + ((rgb >> 8) & 0xFF) + (rgb & 0xFF)) / 3;
+                pixels[i] = (gray << 16) | (gray << 8) | gray;
             }
+        };
+    }
+
+    public PointOperation grayscaleLuminosityOperation() {
+        return (pixels, offset, length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                int rgb = pixels[i];
+                int gray = (int)(LUMA_R[(rgb >> 16) & 0xFF] + LUMA_G[(rgb >> 8) & 0xFF] + LUMA_B[rgb & 0xFF]);
+                pixels[i] = gray * 0x010101;
+            }
+        };
+    }
+
+    static PointOperation lookupOperation(int[] lutR, int[] lutG, int[] lutB) {
+        int[] r = new int[256], g = new int[256], b = lutB.clone();
+        for (int v = 0; v < 256; v++) {
+            r[v] = lutR[v] << 16;
+            g[v] = lutG[v] << 8;
         }
-        return result;
+        return (pixels, offset, length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                int rgb = pixels[i];
+                pixels[i] = r[(rgb >> 16) & 0xFF] | g[(rgb >> 8) & 0xFF] | b[rgb & 0xFF];
+            }
+        };
     }
 
-    public BufferedImage toGrayscaleLuminosity(BufferedImage src) {
+    public BufferedImage applyPointOperation(BufferedImage src, PointOperation operation) {
+        return applyPointOperation(src, operation, () -> false);
+    }
+
+    public BufferedImage applyPointOperation(BufferedImage src, PointOperation operation, BooleanSupplier cancelled) {
         int w = src.getWidth();
         int h = src.getHeight();
         BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = src.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-                int gray = (int)(0.299 * r + 0.587 * g + 0.114 * b);
-                result.setRGB(x, y, (gray << 16) | (gray << 8) | gray);
+        int[] dst = PixelArrays.data(result);
+        int stripRows = Math.max(1, CANCEL_CHECK_SAMPLES / Math.max(1, w));
+        forBands(w, h, (y0, y1) -> {
+            for (int y = y0; y < y1 && !cancelled.getAsBoolean(); y += stripRows) {
+                int end = Math.min(y1, y + stripRows);
+                PixelArrays.copyRows(src, dst, y, end);
+                operation.apply(dst, y * w, (end - y) * w);
             }
-        }
-        return result;
+        });
+        return cancelled.getAsBoolean() ? null : result;
     }
 
     public BufferedImage smoothingFilter(BufferedImage src) {
+        return boxBlur(src, 1);
+    }
+
+    public BufferedImage boxBlur(BufferedImage src, int radius) {
+        if (radius < 1) throw new IllegalArgumentException("Promień musi być dodatni");
         int w = src.getWidth();
         int h = src.getHeight();
         BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] in = pixels(src);
+        int[] out = PixelArrays.data(result);
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int sumR = 0, sumG = 0, sumB = 0, count = 0;
-
-                for (int dy = -1; dy <= 1; dy++) {
-                    for (int dx = -1; dx <= 1; dx++) {
-                        int nx = x + dx;
-                        int ny = y + dy;
-                        if (nx >= 0 && nx < w && ny >= 0 && ny < h) {
-                            int rgb = src.getRGB(nx, ny);
-                            sumR += (rgb >> 16) & 0xFF;
-                            sumG += (rgb >> 8) & 0xFF;
-                            sumB += rgb & 0xFF;
-                            count++;
-                        }
+        forBands(w, h, (from, to) -> {
+            int top = Math.max(0, from - radius - 1);
+            int bottom = Math.min(h, to + radius);
+            int[] sumR = new int[(bottom - top) * w];
+            int[] sumG = new int[sumR.length];
+            int[] sumB = new int[sumR.length];
+
+            for (int y = top; y < bottom; y++) {
+                int row = y * w;
+                int r = 0, g = 0, b = 0;
+                for (int x = 0; x < Math.min(radius, w); x++) {
+                    int rgb = in[row + x];
+                    r += (rgb >> 16) & 0xFF;
+                    g += (rgb >> 8) & 0xFF;
+                    b += rgb & 0xFF;
+                }
+                int i = (y - top) * w;
+                for (int x = 0; x < w; x++, i++) {
+                    if (x + radius < w) {
+                        int rgb = in[row + x + radius];
+                        r += (rgb >> 16) & 0xFF;
+                        g += (rgb >> 8) & 0xFF;
+                        b += rgb & 0xFF;
+                    }
+                    if (x - radius > 0) {
+                        int rgb = in[row + x - radius - 1];
+                        r -= (rgb >> 16) & 0xFF;
+                        g -= (rgb >> 8) & 0xFF;
+                        b -= rgb & 0xFF;
                     }
+                    sumR[i] = r;
+                    sumG[i] = g;
+                    sumB[i] = b;
                 }
+            }
 
-                int avgR = sumR / count;
-                int avgG = sumG / count;
-                int avgB = sumB / count;
-                result.setRGB(x, y, (avgR << 16) | (avgG << 8) | avgB);
+            int[] colR = new int[w];
+            int[] colG = new int[w];
+            int[] colB = new int[w];
+            for (int y = top; y < Math.min(h, from + radius); y++) {
+                addRow(colR, colG, colB, sumR, sumG, sumB, (y - top) * w, 1);
             }
-        }
+            for (int y = from; y < to; y++) {
+                if (y + radius < h) addRow(colR, colG, colB, sumR, sumG, sumB, (y + radius - top) * w, 1);
+                if (y - radius > 0) addRow(colR, colG, colB, sumR, sumG, sumB, (y - radius - 1 - top) * w, -1);
+                int rows = Math.min(h - 1, y + radius) - Math.max(0, y - radius) + 1;
+                int o = y * w;
+                for (int x = 0; x < w; x++) {
+                    int count = rows * (Math.min(w - 1, x + radius) - Math.max(0, x - radius) + 1);
+                    out[o + x] = ((colR[x] / count) << 16) | ((colG[x] / count) << 8) | (colB[x] / count);
+                }
+            }
+        });
         return result;
     }
 
+    private static void addRow(int[] colR, int[] colG, int[] colB, int[] sumR, int[] sumG, int[] sumB, int offset, int sign) {
+        for (int x = 0; x < colR.length; x++) {
+            colR[x] += sign * sumR[offset + x];
+            colG[x] += sign * sumG[offset + x];
+            colB[x] += sign * sumB[offset + x];
+        }
+    }
+
     public BufferedImage medianFilter(BufferedImage src) {
+        return medianFilter(src, 1);
+    }
+
+    public BufferedImage medianFilter(BufferedImage src, int radius) {
+        if (radius < 1) throw new IllegalArgumentException("Promień musi być dodatni");
         int w = src.getWidth();
         int h = src.getHeight();
         BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] in = pixels(src);
+        int[] out = PixelArrays.data(result);
 
-        for (int y = 0; y < h; y++) {
+        switch (radius) {
+            case 1 -> forBands(w, h, (from, to) -> median3x3(in, out, w, h, from, to));
+            case 2 -> forBands(w, h, (from, to) -> median5x5(in, out, w, h, from, to));
+            default -> forBands(h, w, 1, (from, to) -> new MedianHistogram(in, w, h, radius).rows(out, from, to));
+        }
+        return result;
+    }
+
+    private static void median3x3(int[] in, int[] out, int w, int h, int from, int to) {
+        int[] lo = new int[3 * (w + 2)];
+        int[] mid = new int[lo.length];
+        int[] hi = new int[lo.length];
+
+        for (int y = from; y < to; y++) {
+            int up = Math.max(0, y - 1) * w;
+            int row = y * w;
+            int down = Math.min(h - 1, y + 1) * w;
+            for (int x = -1; x <= w; x++) {
+                int cx = Math.max(0, Math.min(w - 1, x));
+                int p0 = in[up + cx], p1 = in[row + cx], p2 = in[down + cx];
+                int c = 3 * (x + 1);
+                for (int shift = 16, ch = 0; ch < 3; shift -= 8, ch++) {
+                    int a = (p0 >> shift) & 0xFF, b = (p1 >> shift) & 0xFF, d = (p2 >> shift) & 0xFF;
+                    int min = Math.min(a, b), max = Math.max(a, b);
+                    lo[c + ch] = Math.min(min, d);
+                    hi[c + ch] = Math.max(max, d);
+                    mid[c + ch] = Math.max(min, Math.min(max, d));
+                }
+            }
             for (int x = 0; x < w; x++) {
-                int[] reds = new int[9];
-                int[] greens = new int[9];
-                int[] blues = new int[9];
-                int idx = 0;
+                int rgb = 0;
+                for (int ch = 0, c = 3 * x; ch < 3; ch++, c++) {
+                    int l = Math.max(lo[c], Math.max(lo[c + 3], lo[c + 6]));
+                    int h0 = Math.min(hi[c], Math.min(hi[c + 3], hi[c + 6]));
+                    int a = mid[c], b = mid[c + 3], d = mid[c + 6];
+                    int m = Math.max(Math.min(a, b), Math.min(Math.max(a, b), d));
+                    rgb = (rgb << 8) | Math.max(Math.min(l, m), Math.min(Math.max(l, m), h0));
+                }
+                out[row + x] = rgb;
+            }
+        }
+    }
+
+    private static void median5x5(int[] in, int[] out, int w, int h, int from, int to) {
+        int[] window = new int[25];
 
-                for (int dy = -1; dy <= 1; dy++) {
-                    for (int dx = -1; dx <= 1; dx++) {
-                        int nx = Math.max(0, Math.min(w - 1, x + dx));
-                        int ny = Math.max(0, Math.min(h - 1, y + dy));
-                        int rgb = src.getRGB(nx, ny);
-                        reds[idx] = (rgb >> 16) & 0xFF;
-                        greens[idx] = (rgb >> 8) & 0xFF;
-                        blues[idx] = rgb & 0xFF;
-                        idx++;
+        for (int y = from; y < to; y++) {
+            for (int x = 0; x < w; x++) {
+                int idx = 0;
+                for (int dy = -2; dy <= 2; dy++) {
+                    int row = Math.max(0, Math.min(h - 1, y + dy)) * w;
+                    for (int dx = -2; dx <= 2; dx++) {
+                        window[idx++] = in[row + Math.max(0, Math.min(w - 1, x + dx))];
                     }
                 }
+                out[y * w + x] = (median25(window, 16) << 16) | (median25(window, 8) << 8) | median25(window, 0);
+            }
+        }
+    }
 
-                Arrays.sort(reds);
-                Arrays.sort(greens);
-                Arrays.sort(blues);
+    private static int median25(int[] window, int shift) {
+        int p0 = (window[0] >> shift) & 0xFF, p1 = (window[1] >> shift) & 0xFF, p2 = (window[2] >> shift) & 0xFF,
+                p3 = (window[3] >> shift) & 0xFF, p4 = (window[4] >> shift) & 0xFF, p5 = (window[5] >> shift) & 0xFF,
+                p6 = (window[6] >> shift) & 0xFF, p7 = (window[7] >> shift) & 0xFF, p8 = (window[8] >> shift) & 0xFF,
+                p9 = (window[9] >> shift) & 0xFF, p10 = (window[10] >> shift) & 0xFF,
+                p11 = (window[11] >> shift) & 0xFF, p12 = (window[12] >> shift) & 0xFF,
+                p13 = (window[13] >> shift) & 0xFF, p14 = (window[14] >> shift) & 0xFF,
+                p15 = (window[15] >> shift) & 0xFF, p16 = (window[16] >> shift) & 0xFF,
+                p17 = (window[17] >> shift) & 0xFF, p18 = (window[18] >> shift) & 0xFF,
+                p19 = (window[19] >> shift) & 0xFF, p20 = (window[20] >> shift) & 0xFF,
+                p21 = (window[21] >> shift) & 0xFF, p22 = (window[22] >> shift) & 0xFF,
+                p23 = (window[23] >> shift) & 0xFF, p24 = (window[24] >> shift) & 0xFF;
+        int t;
+        t = Math.min(p0, p1); p1 = Math.max(p0, p1); p0 = t;
+        t = Math.min(p3, p4); p4 = Math.max(p3, p4); p3 = t;
+        t = Math.min(p2, p4); p4 = Math.max(p2, p4); p2 = t;
+        t = Math.min(p2, p3); p3 = Math.max(p2, p3); p2 = t;
+        t = Math.min(p6, p7); p7 = Math.max(p6, p7); p6 = t;
+        t = Math.min(p5, p7); p7 = Math.max(p5, p7); p5 = t;
+        t = Math.min(p5, p6); p6 = Math.max(p5, p6); p5 = t;
+        t = Math.min(p9, p10); p10 = Math.max(p9, p10); p9 = t;
+        t = Math.min(p8, p10); p10 = Math.max(p8, p10); p8 = t;
+        t = Math.min(p8, p9); p9 = Math.max(p8, p9); p8 = t;
+        t = Math.min(p12, p13); p13 = Math.max(p12, p13); p12 = t;
+        t = Math.min(p11, p13); p13 = Math.max(p11, p13); p11 = t;
+        t = Math.min(p11, p12); p12 = Math.max(p11, p12); p11 = t;
+        t = Math.min(p15, p16); p16 = Math.max(p15, p16); p15 = t;
+        t = Math.min(p14, p16); p16 = Math.max(p14, p16); p14 = t;
+        t = Math.min(p14, p15); p15 = Math.max(p14, p15); p14 = t;
+        t = Math.min(p18, p19); p19 = Math.max(p18, p19); p18 = t;
+        t = Math.min(p17, p19); p19 = Math.max(p17, p19); p17 = t;
+        t = Math.min(p17, p18); p18 = Math.max(p17, p18); p17 = t;
+        t = Math.min(p21, p22); p22 = Math.max(p21, p22); p21 = t;
+        t = Math.min(p20, p22); p22 = Math.max(p20, p22); p20 = t;
+        t = Math.min(p20, p21); p21 = Math.max(p20, p21); p20 = t;
+        t = Math.min(p23, p24); p24 = Math.max(p23, p24); p23 = t;
+        t = Math.min(p2, p5); p5 = Math.max(p2, p5); p2 = t;
+        t = Math.min(p3, p6); p6 = Math.max(p3, p6); p3 = t;
+        t = Math.min(p0, p6); p6 = Math.max(p0, p6); p0 = t;
+        t = Math.min(p0, p3); p3 = Math.max(p0, p3); p0 = t;
+        t = Math.min(p4, p7); p7 = Math.max(p4, p7); p4 = t;
+        t = Math.min(p1, p7); p7 = Math.max(p1, p7); p1 = t;
+        t = Math.min(p1, p4); p4 = Math.max(p1, p4); p1 = t;
+        t = Math.min(p11, p14); p14 = Math.max(p11, p14); p11 = t;
+        t = Math.min(p8, p14); p14 = Math.max(p8, p14); p8 = t;
+        t = Math.min(p8, p11); p11 = Math.max(p8, p11); p8 = t;
+        t = Math.min(p12, p15); p15 = Math.max(p12, p15); p12 = t;
+        t = Math.min(p9, p15); p15 = Math.max(p9, p15); p9 = t;
+        t = Math.min(p9, p12); p12 = Math.max(p9, p12); p9 = t;
+        t = Math.min(p13, p16); p16 = Math.max(p13, p16); p13 = t;
+        t = Math.min(p10, p16); p16 = Math.max(p10, p16); p10 = t;
+        t = Math.min(p10, p13); p13 = Math.max(p10, p13); p10 = t;
+        t = Math.min(p20, p23); p23 = Math.max(p20, p23); p20 = t;
+        t = Math.min(p17, p23); p23 = Math.max(p17, p23); p17 = t;
+        t = Math.min(p17, p20); p20 = Math.max(p17, p20); p17 = t;
+        t = Math.min(p21, p24); p24 = Math.max(p21, p24); p21 = t;
+        t = Math.min(p18, p24); p24 = Math.max(p18, p24); p18 = t;
+        t = Math.min(p18, p21); p21 = Math.max(p18, p21); p18 = t;
+        t = Math.min(p19, p22); p22 = Math.max(p19, p22); p19 = t;
+        t = Math.min(p8, p17); p17 = Math.max(p8, p17); p8 = t;
+        t = Math.min(p9, p18); p18 = Math.max(p9, p18); p9 = t;
+        t = Math.min(p0, p18); p18 = Math.max(p0, p18); p0 = t;
+        t = Math.min(p0, p9); p9 = Math.max(p0, p9); p0 = t;
+        t = Math.min(p10, p19); p19 = Math.max(p10, p19); p10 = t;
+        t = Math.min(p1, p19); p19 = Math.max(p1, p19); p1 = t;
+        t = Math.min(p1, p10); p10 = Math.max(p1, p10); p1 = t;
+        t = Math.min(p11, p20); p20 = Math.max(p11, p20); p11 = t;
+        t = Math.min(p2, p20); p20 = Math.max(p2, p20); p2 = t;
+        t = Math.min(p2, p11); p11 = Math.max(p2, p11); p2 = t;
+        t = Math.min(p12, p21); p21 = Math.max(p12, p21); p12 = t;
+        t = Math.min(p3, p21); p21 = Math.max(p3, p21); p3 = t;
+        t = Math.min(p3, p12); p12 = Math.max(p3, p12); p3 = t;
+        t = Math.min(p13, p22); p22 = Math.max(p13, p22); p13 = t;
+        t = Math.min(p4, p22); p22 = Math.max(p4, p22); p4 = t;
+        t = Math.min(p4, p13); p13 = Math.max(p4, p13); p4 = t;
+        t = Math.min(p14, p23); p23 = Math.max(p14, p23); p14 = t;
+        t = Math.min(p5, p23); p23 = Math.max(p5, p23); p5 = t;
+        t = Math.min(p5, p14); p14 = Math.max(p5, p14); p5 = t;
+        t = Math.min(p15, p24); p24 = Math.max(p15, p24); p15 = t;
+        t = Math.min(p6, p24); p24 = Math.max(p6, p24); p6 = t;
+        t = Math.min(p6, p15); p15 = Math.max(p6, p15); p6 = t;
+        t = Math.min(p7, p16); p16 = Math.max(p7, p16); p7 = t;
+        t = Math.min(p7, p19); p19 = Math.max(p7, p19); p7 = t;
+        t = Math.min(p13, p21); p21 = Math.max(p13, p21); p13 = t;
+        t = Math.min(p15, p23); p23 = Math.max(p15, p23); p15 = t;
+        t = Math.min(p7, p13); p13 = Math.max(p7, p13); p7 = t;
+        t = Math.min(p7, p15); p15 = Math.max(p7, p15); p7 = t;
+        t = Math.min(p1, p9); p9 = Math.max(p1, p9); p1 = t;
+        t = Math.min(p3, p11); p11 = Math.max(p3, p11); p3 = t;
+        t = Math.min(p5, p17); p17 = Math.max(p5, p17); p5 = t;
+        t = Math.min(p11, p17); p17 = Math.max(p11, p17); p11 = t;
+        t = Math.min(p9, p17); p17 = Math.max(p9, p17); p9 = t;
+        t = Math.min(p4, p10); p10 = Math.max(p4, p10); p4 = t;
+        t = Math.min(p6, p12); p12 = Math.max(p6, p12); p6 = t;
+        t = Math.min(p7, p14); p14 = Math.max(p7, p14); p7 = t;
+        t = Math.min(p4, p6); p6 = Math.max(p4, p6); p4 = t;
+        t = Math.min(p4, p7); p7 = Math.max(p4, p7); p4 = t;
+        t = Math.min(p12, p14); p14 = Math.max(p12, p14); p12 = t;
+        t = Math.min(p10, p14); p14 = Math.max(p10, p14); p10 = t;
+        t = Math.min(p6, p7); p7 = Math.max(p6, p7); p6 = t;
+        t = Math.min(p10, p12); p12 = Math.max(p10, p12); p10 = t;
+        t = Math.min(p6, p10); p10 = Math.max(p6, p10); p6 = t;
+        t = Math.min(p6, p17); p17 = Math.max(p6, p17); p6 = t;
+        t = Math.min(p12, p17); p17 = Math.max(p12, p17); p12 = t;
+        t = Math.min(p7, p17); p17 = Math.max(p7, p17); p7 = t;
+        t = Math.min(p7, p10); p10 = Math.max(p7, p10); p7 = t;
+        t = Math.min(p12, p18); p18 = Math.max(p12, p18); p12 = t;
+        t = Math.min(p7, p12); p12 = Math.max(p7, p12); p7 = t;
+        t = Math.min(p10, p18); p18 = Math.max(p10, p18); p10 = t;
+        t = Math.min(p12, p20); p20 = Math.max(p12, p20); p12 = t;
+        t = Math.min(p10, p20); p20 = Math.max(p10, p20); p10 = t;
+        t = Math.min(p10, p12); p12 = Math.max(p10, p12); p10 = t;
+        return p12;
+    }
 
-                result.setRGB(x, y, (reds[4] << 16) | (greens[4] << 8) | blues[4]);
+    private static final class MedianHistogram {
+        private final int[] in;
+        private final int w;
+        private final int h;
+        private final int radius;
+        private final int rank;
+        private final short[][] columnFine = new short[3][];
+        private final short[][] columnCoarse = new short[3][];
+        private final int[] fine = new int[256];
+        private final int[] coarse = new int[16];
+        private final int[] updated = new int[16];
+
+        MedianHistogram(int[] in, int w, int h, int radius) {
+            this.in = in;
+            this.w = w;
+            this.h = h;
+            this.radius = radius;
+            this.rank = (2 * radius + 1) * (2 * radius + 1) / 2;
+            for (int ch = 0; ch < 3; ch++) {
+                columnFine[ch] = new short[w * 256];
+                columnCoarse[ch] = new short[w * 16];
             }
         }
-        return result;
-    }
 
-    public BufferedImage sobelFilter(BufferedImage src) {
-        src = toGrayscaleLuminosity(src);
-        int w = src.getWidth();
-        int h = src.getHeight();
-        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        void rows(int[] out, int from, int to) {
+            for (int dy = -radius; dy <= radius; dy++) addRow(Math.max(0, Math.min(h - 1, from + dy)), 1);
+            for (int y = from; y < to; y++) {
+                if (y > from) {
+                    addRow(Math.max(0, y - 1 - radius), -1);
+                    addRow(Math.min(h - 1, y + radius), 1);
+                }
+                for (int x = 0; x < w; x++) out[y * w + x] = 0;
+                for (int ch = 0; ch < 3; ch++) row(out, y * w, ch);
+            }
+        }
 
-        int[][] sobelX = {{-1, 0, 1}, {-2, 0, 2}, {-1, 0, 1}};
-        int[][] sobelY = {{-1, -2, -1}, {0, 0, 0}, {1, 2, 1}};
+        private void addRow(int y, int sign) {
+            for (int x = 0, i = y * w; x < w; x++, i++) {
+                int rgb = in[i];
+                for (int shift = 16, ch = 0; ch < 3; shift -= 8, ch++) {
+                    int v = (rgb >> shift) & 0xFF;
+                    columnFine[ch][x * 256 + v] += (short) sign;
+                    columnCoarse[ch][x * 16 + (v >> 4)] += (short) sign;
+                }
+            }
+        }
+
+        private void row(int[] out, int offset, int ch) {
+            short[] colFine = columnFine[ch];
+            short[] colCoarse = columnCoarse[ch];
+            int shift = 16 - 8 * ch;
+            Arrays.fill(coarse, 0);
+            Arrays.fill(updated, -1);
+            for (int dx = -radius; dx <= radius; dx++) {
+                int c = Math.max(0, Math.min(w - 1, dx)) * 16;
+                for (int k = 0; k < 16; k++) coarse[k] += colCoarse[c + k];
+            }
 
-        for (int y = 0; y < h; y++) {
             for (int x = 0; x < w; x++) {
-                int gxR = 0, gyR = 0, gxG = 0, gyG = 0, gxB = 0, gyB = 0;
-
-                for (int dy = -1; dy <= 1; dy++) {
-                    for (int dx = -1; dx <= 1; dx++) {
-                        int nx = Math.max(0, Math.min(w - 1, x + dx));
-                        int ny = Math.max(0, Math.min(h - 1, y + dy));
-                        int rgb = src.getRGB(nx, ny);
-                        int r = (rgb >> 16) & 0xFF;
-                        int g = (rgb >> 8) & 0xFF;
-                        int b = rgb & 0xFF;
-
-                        int kx = sobelX[dy + 1][dx + 1];
-                        int ky = sobelY[dy + 1][dx + 1];
-
-                        gxR += kx * r;
-                        gyR += ky * r;
-                        gxG += kx * g;
-                        gyG += ky * g;
-                        gxB += kx * b;
-                        gyB += ky * b;
-                    }
+                if (x > 0) {
+                    int removed = Math.max(0, x - 1 - radius) * 16;
+                    int added = Math.min(w - 1, x + radius) * 16;
+                    for (int k = 0; k < 16; k++) coarse[k] += colCoarse[added + k] - colCoarse[removed + k];
                 }
 
-                int magR = (int)Math.sqrt(gxR * gxR + gyR * gyR);
-                int magG = (int)Math.sqrt(gxG * gxG + gyG * gyG);
-                int magB = (int)Math.sqrt(gxB * gxB + gyB * gyB);
+                int count = 0;
+                int k = 0;
+                while (count + coarse[k] <= rank) count += coarse[k++];
 
-                result.setRGB(x, y, (clamp(magR) << 16) | (clamp(magG) << 8) | clamp(magB));
+                int base = k * 16;
+                if (updated[k] < 0 || x - updated[k] > 2 * radius + 1) {
+                    Arrays.fill(fine, base, base + 16, 0);
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int c = Math.max(0, Math.min(w - 1, x + dx)) * 256 + base;
+                        for (int v = 0; v < 16; v++) fine[base + v] += colFine[c + v];
+                    }
+                } else {
+                    for (int xx = updated[k] + 1; xx <= x; xx++) {
+                        int removed = Math.max(0, xx - 1 - radius) * 256 + base;
+                        int added = Math.min(w - 1, xx + radius) * 256 + base;
+                        for (int v = 0; v < 16; v++) fine[base + v] += colFine[added + v] - colFine[removed + v];
+                    }
+                }
+                updated[k] = x;
+
+                int v = base;
+                while (count + fine[v] <= rank) count += fine[v++];
+                out[offset + x] |= v << shift;
             }
         }
-        return result;
     }
 
-    public BufferedImage sharpenFilter(BufferedImage src) {
+    public BufferedImage sobelFilter(BufferedImage src) {
+        return sobelFilter(src, GradientOutput.L2);
+    }
+
+    public BufferedImage sobelFilter(BufferedImage src, GradientOutput output) {
         int w = src.getWidth();
         int h = src.getHeight();
         BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] in = pixels(src);
+        int[] out = PixelArrays.data(result);
+        byte[] luma = new byte[w * h];
 
-        int[][] kernel = {{0, -1, 0}, {-1, 5, -1}, {0, -1, 0}};
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int sumR = 0, sumG = 0, sumB = 0;
-
-                for (int dy = -1; dy <= 1; dy++) {
-                    for (int dx = -1; dx <= 1; dx++) {
-                        int nx = Math.max(0, Math.min(w - 1, x + dx));
-                        int ny = Math.max(0, Math.min(h - 1, y + dy));
-                        int rgb = src.getRGB(nx, ny);
-                        int k = kernel[dy + 1][dx + 1];
-
-                        sumR += k * ((rgb >> 16) & 0xFF);
-                        sumG += k * ((rgb >> 8) & 0xFF);
-                        sumB += k * (rgb & 0xFF);
-                    }
+        forBands(w, h, (from, to) -> {
+            for (int i = from * w; i < to * w; i++) {
+                int rgb = in[i];
+                luma[i] = (byte) luminosity((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            }
+        });
+        forBands(w, h, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int up = Math.max(0, y - 1) * w;
+                int row = y * w;
+                int down = Math.min(h - 1, y + 1) * w;
+                for (int x = 0; x < w; x++) {
+                    int l = Math.max(0, x - 1), r = Math.min(w - 1, x + 1);
+                    int a = luma[up + l] & 0xFF, b = luma[up + x] & 0xFF, c = luma[up + r] & 0xFF;
+                    int d = luma[row + l] & 0xFF, f = luma[row + r] & 0xFF;
+                    int g = luma[down + l] & 0xFF, k = luma[down + x] & 0xFF, m = luma[down + r] & 0xFF;
+                    int gx = (c + 2 * f + m) - (a + 2 * d + g);
+                    int gy = (g + 2 * k + m) - (a + 2 * b + c);
+                    int v = switch (output) {
+                        case L2 -> {
+                            int sq = gx * gx + gy * gy;
+                            yield sq < SQRT_TABLE.length ? SQRT_TABLE[sq] : 255;
+                        }
+                        case L1 -> Math.min(255, Math.abs(gx) + Math.abs(gy));
+                        case DIRECTION -> gx == 0 && gy == 0 ? 0 : (int) ((Math.atan2(gy, gx) + Math.PI) * 255 / (2 * Math.PI));
+                    };
+                    out[row + x] = (v << 16) | (v << 8) | v;
                 }
-
-                result.setRGB(x, y, (clamp(sumR) << 16) | (clamp(sumG) << 8) | clamp(sumB));
             }
-        }
+        });
         return result;
     }
 
+    private static int[] sqrtTable() {
+        int[] table = new int[255 * 255];
+        for (int i = 0; i < table.length; i++) table[i] = (int) Math.sqrt(i);
+        return table;
+    }
+
+    public BufferedImage sharpenFilter(BufferedImage src) {
+        return convolve(src, SHARPEN, BorderMode.CLAMP);
+    }
+
     public BufferedImage gaussianBlur(BufferedImage src) {
+        return convolve(src, GAUSSIAN_3X3, BorderMode.CLAMP);
+    }
+
+    public BufferedImage gaussianBlur(BufferedImage src, int radius) {
+        if (radius < 1) throw new IllegalArgumentException("Promień musi być dodatni");
+        int[] weights = gaussianWeights(radius);
+        int w = src.getWidth();
+        int h = src.getHeight();
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] in = pixels(src);
+        int[] out = PixelArrays.data(result);
+        int shift = 2 * GAUSS_BITS;
+        forBands(w, h, (from, to) -> convolveSeparable(in, out, w, h, from, to, weights, radius, weights, radius,
+                shift, 1 << (shift - 1), BorderMode.CLAMP));
+        return result;
+    }
+
+    private static int[] gaussianWeights(int radius) {
+        double sigma = Math.max(radius / 3.0, 0.5);
+        double[] g = new double[2 * radius + 1];
+        double total = 0;
+        for (int i = -radius; i <= radius; i++) {
+            g[i + radius] = Math.exp(-(i * i) / (2 * sigma * sigma));
+            total += g[i + radius];
+        }
+        int[] weights = new int[g.length];
+        int sum = 0;
+        for (int i = 0; i < g.length; i++) {
+            weights[i] = (int) Math.round(g[i] / total * (1 << GAUSS_BITS));
+            sum += weights[i];
+        }
+        weights[radius] += (1 << GAUSS_BITS) - sum;
+        return weights;
+    }
+
+    public BufferedImage convolve(BufferedImage src, Kernel kernel) {
+        return convolve(src, kernel, BorderMode.CLAMP);
+    }
+
+    public BufferedImage convolve(BufferedImage src, Kernel kernel, BorderMode border) {
+        return convolve(src, kernel, border, ConvolutionMode.AUTO);
+    }
+
+    public BufferedImage convolve(BufferedImage src, Kernel kernel, BorderMode border, ConvolutionMode mode) {
         int w = src.getWidth();
         int h = src.getHeight();
+        int kw = kernel.getWidth();
+        int kh = kernel.getHeight();
+        int ox = kernel.getXOrigin();
+        int oy = kernel.getYOrigin();
+        float[] data = kernel.getKernelData(null);
         BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] in = pixels(src);
+        int[] out = PixelArrays.data(result);
+
+        int taps = 0;
+        for (float v : data) if (v != 0) taps++;
+        float[][] factors = separate(data, kw, kh);
+        boolean separable = factors != null && kw + kh < taps;
+        int tile = FFTConvolver.bestTile(kw, kh, w, h);
+        if (mode == ConvolutionMode.FFT || mode == ConvolutionMode.AUTO
+                && FFTConvolver.costPerPixel(tile, kw, kh) < SPATIAL_COST_PER_TAP * (separable ? kw + kh : taps)) {
+            FFTConvolver fft = new FFTConvolver(data, kw, kh, ox, oy, tile);
+            int tileRows = fft.tileRows(h);
+            forBands(tileRows, (long) w * h / tileRows, BANDS_PER_WORKER,
+                    (from, to) -> fft.rows(in, out, w, h, from, to, border));
+        } else if (separable) {
+            float[] row = factors[0], col = factors[1];
+            int bits = fixedPointBits(255.0 * absSum(row), SEPARABLE_BITS);
+            int[] rowWeights = quantize(row, bits);
+            int[] colWeights = quantize(col, bits);
+            forBands(w, h, (from, to) -> convolveSeparable(in, out, w, h, from, to, rowWeights, ox, colWeights, oy,
+                    2 * bits, 0, border));
+        } else {
+            int bits = fixedPointBits(255.0 * absSum(data), MAX_KERNEL_BITS);
+            int[] weights = quantize(data, bits);
+            forBands(w, h, (from, to) -> convolve2D(in, out, w, h, from, to, weights, kw, kh, ox, oy, bits, border));
+        }
+        return result;
+    }
+
+    private static float[][] separate(float[] data, int kw, int kh) {
+        int pivot = 0;
+        for (int i = 1; i < data.length; i++) if (Math.abs(data[i]) > Math.abs(data[pivot])) pivot = i;
+        float max = Math.abs(data[pivot]);
+        if (max == 0) return null;
+        int pr = pivot / kw, pc = pivot % kw;
+        float[] row = new float[kw];
+        float[] col = new float[kh];
+        for (int x = 0; x < kw; x++) row[x] = data[pr * kw + x];
+        long odd = oddFactor(row);
+        for (int x = 0; x < kw; x++) row[x] /= odd;
+        for (int y = 0; y < kh; y++) col[y] = (float) ((double) data[y * kw + pc] * odd / data[pivot]);
+        for (int y = 0; y < kh; y++) {
+            for (int x = 0; x < kw; x++) {
+                if (Math.abs(data[y * kw + x] - col[y] * row[x]) > max * 1e-6f) return null;
+            }
+        }
+        return new float[][]{row, col};
+    }
+
+    private static long oddFactor(float[] values) {
+        long gcd = 0;
+        for (float v : values) {
+            double scaled = Math.abs((double) v) * (1 << 24);
+            if (scaled != Math.rint(scaled) || scaled >= 1L << 53) return 1;
+            long n = (long) scaled;
+            if (n != 0) gcd = gcd == 0 ? n : gcd(gcd, n);
+        }
+        return gcd == 0 ? 1 : gcd >> Long.numberOfTrailingZeros(gcd);
+    }
 
-        double[][] kernel = {
-                {1.0/16, 2.0/16, 1.0/16},
-                {2.0/16, 4.0/16, 2.0/16},
-                {1.0/16, 2.0/16, 1.0/16}
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static double absSum(float[] values) {
+        double sum = 0;
+        for (float v : values) sum += Math.abs(v);
+        return sum;
+    }
+
+    private static int fixedPointBits(double maxMagnitude, int maxBits) {
+        if (maxMagnitude >= Integer.MAX_VALUE) throw new IllegalArgumentException("Zbyt duże wagi jądra");
+        int bits = maxBits;
+        while (bits > 0 && maxMagnitude * (1L << bits) >= Integer.MAX_VALUE) bits--;
+        return bits;
+    }
+
+    private static int[] quantize(float[] values, int bits) {
+        int[] weights = new int[values.length];
+        for (int i = 0; i < values.length; i++) weights[i] = Math.round(values[i] * (1 << bits));
+        return weights;
+    }
+
+    static int borderIndex(int i, int n, BorderMode border) {
+        if (i >= 0 && i < n) return i;
+        return switch (border) {
+            case CLAMP -> i < 0 ? 0 : n - 1;
+            case WRAP -> Math.floorMod(i, n);
+            case ZERO -> -1;
+            case REFLECT -> {
+                if (n == 1) yield 0;
+                int period = 2 * (n - 1);
+                int m = Math.floorMod(i, period);
+                yield m < n ? m : period - m;
+            }
         };
+    }
+
+    private static void convolveSeparable(int[] in, int[] out, int w, int h, int from, int to,
+                                          int[] row, int ox, int[] col, int oy, int shift, int bias, BorderMode border) {
+        int[] slot = new int[h];
+        Arrays.fill(slot, -1);
+        int[] sources = new int[h];
+        int count = 0;
+        for (int y = from; y < to; y++) {
+            for (int j = 0; j < col.length; j++) {
+                int r = borderIndex(y + j - oy, h, border);
+                if (col[j] != 0 && r >= 0 && slot[r] < 0) {
+                    slot[r] = count;
+                    sources[count++] = r;
+                }
+            }
+        }
+
+        int[] lineR = new int[w];
+        int[] lineG = new int[w];
+        int[] lineB = new int[w];
+        int[] hr = new int[count * w];
+        int[] hg = new int[hr.length];
+        int[] hb = new int[hr.length];
+        for (int s = 0; s < count; s++) {
+            for (int x = 0, i = sources[s] * w; x < w; x++, i++) {
+                int rgb = in[i];
+                lineR[x] = (rgb >> 16) & 0xFF;
+                lineG[x] = (rgb >> 8) & 0xFF;
+                lineB[x] = rgb & 0xFF;
+            }
+            convolveLine(lineR, hr, s * w, w, row, ox, border);
+            convolveLine(lineG, hg, s * w, w, row, ox, border);
+            convolveLine(lineB, hb, s * w, w, row, ox, border);
+        }
+
+        long[] accR = new long[w];
+        long[] accG = new long[w];
+        long[] accB = new long[w];
+        for (int y = from; y < to; y++) {
+            Arrays.fill(accR, bias);
+            Arrays.fill(accG, bias);
+            Arrays.fill(accB, bias);
+            for (int j = 0; j < col.length; j++) {
+                int r = borderIndex(y + j - oy, h, border);
+                long weight = col[j];
+                if (weight == 0 || r < 0) continue;
+                int offset = slot[r] * w;
+                for (int x = 0; x < w; x++) {
+                    accR[x] += weight * hr[offset + x];
+                    accG[x] += weight * hg[offset + x];
+                    accB[x] += weight * hb[offset + x];
+                }
+            }
+            int o = y * w;
+            for (int x = 0; x < w; x++) {
+                out[o + x] = (clamp(accR[x] >> shift) << 16) | (clamp(accG[x] >> shift) << 8) | clamp(accB[x] >> shift);
+            }
+        }
+    }
+
+    private static void convolveLine(int[] line, int[] dst, int offset, int w, int[] weights, int origin, BorderMode border) {
+        int start = Math.min(w, origin);
+        int end = Math.max(start, w - (weights.length - 1 - origin));
+        for (int x = start; x < end; x++) {
+            int acc = 0;
+            for (int i = 0, p = x - origin; i < weights.length; i++, p++) acc += weights[i] * line[p];
+            dst[offset + x] = acc;
+        }
+        convolveLineEdge(line, dst, offset, 0, start, w, weights, origin, border);
+        convolveLineEdge(line, dst, offset, end, w, w, weights, origin, border);
+    }
+
+    private static void convolveLineEdge(int[] line, int[] dst, int offset, int from, int to, int w,
+                                         int[] weights, int origin, BorderMode border) {
+        for (int x = from; x < to; x++) {
+            int acc = 0;
+            for (int i = 0; i < weights.length; i++) {
+                int p = borderIndex(x + i - origin, w, border);
+                if (p >= 0) acc += weights[i] * line[p];
+            }
+            dst[offset + x] = acc;
+        }
+    }
+
+    private static void convolve2D(int[] in, int[] out, int w, int h, int from, int to,
+                                   int[] weights, int kw, int kh, int ox, int oy, int shift, BorderMode border) {
+        int taps = 0;
+        for (int k : weights) if (k != 0) taps++;
+        int[] tapX = new int[taps], tapY = new int[taps], tapWeight = new int[taps], tapOffset = new int[taps];
+        for (int i = 0, t = 0; i < weights.length; i++) {
+            if (weights[i] == 0) continue;
+            tapX[t] = i % kw - ox;
+            tapY[t] = i / kw - oy;
+            tapWeight[t] = weights[i];
+            tapOffset[t] = tapY[t] * w + tapX[t];
+            t++;
+        }
+        int x0 = Math.min(w, ox);
+        int x1 = Math.max(x0, w - (kw - 1 - ox));
 
-        for (int y = 0; y < h; y++) {
+        for (int y = from; y < to; y++) {
+            boolean inside = y - oy >= 0 && y + kh - 1 - oy < h;
+            int o = y * w;
             for (int x = 0; x < w; x++) {
-                double sumR = 0, sumG = 0, sumB = 0;
-
-                for (int dy = -1; dy <= 1; dy++) {
-                    for (int dx = -1; dx <= 1; dx++) {
-                        int nx = Math.max(0, Math.min(w - 1, x + dx));
-                        int ny = Math.max(0, Math.min(h - 1, y + dy));
-                        int rgb = src.getRGB(nx, ny);
-                        double k = kernel[dy + 1][dx + 1];
-
-                        sumR += k * ((rgb >> 16) & 0xFF);
-                        sumG += k * ((rgb >> 8) & 0xFF);
-                        sumB += k * (rgb & 0xFF);
+                int r = 0, g = 0, b = 0;
+                if (inside && x >= x0 && x < x1) {
+                    for (int t = 0; t < taps; t++) {
+                        int rgb = in[o + x + tapOffset[t]];
+                        int k = tapWeight[t];
+                        r += k * ((rgb >> 16) & 0xFF);
+                        g += k * ((rgb >> 8) & 0xFF);
+                        b += k * (rgb & 0xFF);
+                    }
+                } else {
+                    for (int t = 0; t < taps; t++) {
+                        int sx = borderIndex(x + tapX[t], w, border);
+                        int sy = borderIndex(y + tapY[t], h, border);
+                        if (sx < 0 || sy < 0) continue;
+                        int rgb = in[sy * w + sx];
+                        int k = tapWeight[t];
+                        r += k * ((rgb >> 16) & 0xFF);
+                        g += k * ((rgb >> 8) & 0xFF);
+                        b += k * (rgb & 0xFF);
                     }
                 }
+                out[o + x] = (clamp(r >> shift) << 16) | (clamp(g >> shift) << 8) | clamp(b >> shift);
+            }
+        }
+    }
+
+    private int[] pixels(BufferedImage src) {
+        int[] data = PixelArrays.packed(src);
+        if (data != null) return data;
+        int w = src.getWidth();
+        int[] copy = new int[w * src.getHeight()];
+        forBands(w, src.getHeight(), (y0, y1) -> PixelArrays.copyRows(src, copy, y0, y1));
+        return copy;
+    }
+
+    private void forBands(int w, int h, BandKernel kernel) {
+        forBands(h, w, BANDS_PER_WORKER, kernel);
+    }
+
+    private void forBands(int units, long workPerUnit, int bandsPerWorker, BandKernel kernel) {
+        long work = units * workPerUnit;
+        if (pool == null || work < MIN_PARALLEL_PIXELS) {
+            kernel.rows(0, units);
+            return;
+        }
+        long bands = Math.min((long) pool.getParallelism() * bandsPerWorker, work / MIN_BAND_PIXELS);
+        pool.invoke(new Band(kernel, 0, units, (int) Math.max(1, Math.min(bands, units))));
+    }
 
-                result.setRGB(x, y, (clamp((int)sumR) << 16) | (clamp((int)sumG) << 8) | clamp((int)sumB));
+    private interface BandKernel {
+        void rows(int y0, int y1);
+    }
+
+    private static final class Band extends RecursiveAction {
+        private final BandKernel kernel;
+        private final int y0;
+        private final int y1;
+        private final int bands;
+
+        Band(BandKernel kernel, int y0, int y1, int bands) {
+            this.kernel = kernel;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.bands = bands;
+        }
+
+        @Override
+        protected void compute() {
+            if (bands <= 1) {
+                kernel.rows(y0, y1);
+                return;
             }
+            int left = bands / 2;
+            int mid = y0 + (int) ((long) (y1 - y0) * left / bands);
+            invokeAll(new Band(kernel, y0, mid, left), new Band(kernel, mid, y1, bands - left));
+        }
+    }
+
+    public HighDepthImage add(HighDepthImage src, int valueR, int valueG, int valueB) {
+        int maxval = src.getMaxval();
+        return applyLut(src, addLut(maxval, valueR), addLut(maxval, valueG), addLut(maxval, valueB));
+    }
+
+    public HighDepthImage subtract(HighDepthImage src, int valueR, int valueG, int valueB) {
+        return add(src, -valueR, -valueG, -valueB);
+    }
+
+    public HighDepthImage multiply(HighDepthImage src, double factorR, double factorG, double factorB) {
+        int maxval = src.getMaxval();
+        return applyLut(src, multiplyLut(maxval, factorR), multiplyLut(maxval, factorG), multiplyLut(maxval, factorB));
+    }
+
+    public HighDepthImage divide(HighDepthImage src, double divisorR, double divisorG, double divisorB) {
+        if (divisorR == 0 || divisorG == 0 || divisorB == 0) {
+            throw new IllegalArgumentException("Dzielnik nie może być zerem");
+        }
+        return multiply(src, 1.0/divisorR, 1.0/divisorG, 1.0/divisorB);
+    }
+
+    public HighDepthImage changeBrightness(HighDepthImage src, int delta) {
+        return add(src, delta, delta, delta);
+    }
+
+    public HighDepthImage changeBrightness(HighDepthImage src, int delta, BooleanSupplier cancelled) {
+        int[] lut = addLut(src.getMaxval(), delta);
+        return applyLut(src, lut, lut, lut, cancelled);
+    }
+
+    public HighDepthImage toGrayscaleAverage(HighDepthImage src) {
+        HighDepthImage result = new HighDepthImage(src.getWidth(), src.getHeight(), src.getMaxval());
+        short[] r = src.getRed(), g = src.getGreen(), b = src.getBlue();
+        for (int i = 0; i < r.length; i++) {
+            short gray = (short) (((r[i] & 0xFFFF) + (g[i] & 0xFFFF) + (b[i] & 0xFFFF)) / 3);
+            result.getRed()[i] = gray;
+            result.getGreen()[i] = gray;
+            result.getBlue()[i] = gray;
         }
         return result;
     }
-}
\ No newline at end of file
+
+    public HighDepthImage toGrayscaleLuminosity(HighDepthImage src) {
+        HighDepthImage result = new HighDepthImage(src.getWidth(), src.getHeight(), src.getMaxval());
+        short[] r = src.getRed(), g = src.getGreen(), b = src.getBlue();
+        for (int i = 0; i < r.length; i++) {
+            short gray = (short) highDepthLuminosity(r[i] & 0xFFFF, g[i] & 0xFFFF, b[i] & 0xFFFF);
+            result.getRed()[i] = gray;
+            result.getGreen()[i] = gray;
+            result.getBlue()[i] = gray;
+        }
+        return result;
+    }
+
+    public HighDepthImage stretchHistogram(HighDepthImage src) {
+        int maxval = src.getMaxval();
+        return applyLut(src, stretchLut(src.getRed(), maxval), stretchLut(src.getGreen(), maxval), stretchLut(src.getBlue(), maxval));
+    }
+
+    public HighDepthImage equalizeHistogram(HighDepthImage src) {
+        int maxval = src.getMaxval();
+        return applyLut(src, equalizeLut(src.getRed(), maxval), equalizeLut(src.getGreen(), maxval), equalizeLut(src.getBlue(), maxval));
+    }
+
+    private static int[] addLut(int maxval, int value) {
+        int[] lut = new int[maxval + 1];
+        for (int v = 0; v <= maxval; v++) lut[v] = Math.max(0, Math.min(maxval, v + value));
+        return lut;
+    }
+
+    private static int[] multiplyLut(int maxval, double factor) {
+        int[] lut = new int[maxval + 1];
+        for (int v = 0; v <= maxval; v++) lut[v] = Math.max(0, Math.min(maxval, (int) (v * factor)));
+        return lut;
+    }
+
+    private static int[] stretchLut(short[] plane, int maxval) {
+        int min = maxval, max = 0;
+        for (short s : plane) {
+            int v = Math.min(s & 0xFFFF, maxval);
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        int[] lut = new int[maxval + 1];
+        for (int v = 0; v <= maxval; v++) {
+            lut[v] = max > min ? (int) ((long) Math.max(0, Math.min(v, max) - min) * maxval / (max - min)) : v;
+        }
+        return lut;
+    }
+
+    private static int[] equalizeLut(short[] plane, int maxval) {
+        long[] cdf = new long[maxval + 1];
+        for (short s : plane) cdf[Math.min(s & 0xFFFF, maxval)]++;
+        for (int v = 1; v <= maxval; v++) cdf[v] += cdf[v - 1];
+        int[] lut = new int[maxval + 1];
+        long total = Math.max(1, plane.length);
+        for (int v = 0; v <= maxval; v++) lut[v] = (int) (cdf[v] * maxval / total);
+        return lut;
+    }
+
+    private static HighDepthImage applyLut(HighDepthImage src, int[] lutR, int[] lutG, int[] lutB) {
+        return applyLut(src, lutR, lutG, lutB, () -> false);
+    }
+
+    private static HighDepthImage applyLut(HighDepthImage src, int[] lutR, int[] lutG, int[] lutB, BooleanSupplier cancelled) {
+        HighDepthImage result = new HighDepthImage(src.getWidth(), src.getHeight(), src.getMaxval());
+        applyLut(src.getRed(), result.getRed(), lutR, cancelled);
+        applyLut(src.getGreen(), result.getGreen(), lutG, cancelled);
+        applyLut(src.getBlue(), result.getBlue(), lutB, cancelled);
+        return cancelled.getAsBoolean() ? null : result;
+    }
+
+    private static void applyLut(short[] src, short[] dst, int[] lut, BooleanSupplier cancelled) {
+        int maxval = lut.length - 1;
+        for (int start = 0; start < src.length && !cancelled.getAsBoolean(); start += CANCEL_CHECK_SAMPLES) {
+            int end = Math.min(src.length, start + CANCEL_CHECK_SAMPLES);
+            for (int i = start; i < end; i++) dst[i] = (short) lut[Math.min(src[i] & 0xFFFF, maxval)];
+        }
+    }
+}
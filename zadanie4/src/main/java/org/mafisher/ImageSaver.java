@@ -6,6 +6,8 @@ import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
@@ -29,8 +31,48 @@ public class ImageSaver {
         }
     }
 
+    public void saveAsPPM(BufferedImage img, File out) throws IOException {
+        savePNM(img, out, PNMWriter.Format.PPM);
+    }
+
+    public void saveAsPGM(BufferedImage img, File out) throws IOException {
+        savePNM(img, out, PNMWriter.Format.PGM);
+    }
+
+    public void saveAsPBM(BufferedImage img, File out) throws IOException {
+        savePNM(img, out, PNMWriter.Format.PBM);
+    }
+
+    public void saveAsPPM(HighDepthImage img, File out) throws IOException {
+        savePNM(img, out, PNMWriter.Format.PPM);
+    }
+
+    public void savePNM(HighDepthImage img, File out, PNMWriter.Format format) throws IOException {
+        try (PNMWriter writer = new PNMWriter(out, format, img.getWidth(), img.getHeight(), img.getMaxval())) {
+            writer.writeRows(img, 0, img.getHeight());
+        }
+    }
+
+    public void savePNM(BufferedImage img, File out, PNMWriter.Format format) throws IOException {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        try (PNMWriter writer = new PNMWriter(out, format, w, h, 255)) {
+            int[] data = PixelArrays.packed(img);
+            if (data != null) {
+                writer.writeRows(data, 0, h);
+                return;
+            }
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                img.getRGB(0, y, w, 1, row, 0, w);
+                writer.writeRows(row, 0, 1);
+            }
+        }
+    }
+
     private BufferedImage convertToRGB(BufferedImage src) {
-        if (src.getType() == BufferedImage.TYPE_INT_RGB) return src;
+        ColorModel cm = src.getColorModel();
+        if (!cm.hasAlpha() && !(cm instanceof IndexColorModel)) return src;
         BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
         out.getGraphics().drawImage(src, 0, 0, null);
         return out;
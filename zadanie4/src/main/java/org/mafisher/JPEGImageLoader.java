@@ -1,14 +1,109 @@
 package org.mafisher;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
 
 public class JPEGImageLoader implements ImageLoader {
 
+    private static final int EXIF_THUMBNAIL_OFFSET = 0x0201;
+    private static final int EXIF_THUMBNAIL_LENGTH = 0x0202;
+
     @Override
     public BufferedImage load(File file, boolean linearScale) throws IOException {
         return ImageIO.read(file);
     }
-}
\ No newline at end of file
+
+    @Override
+    public BufferedImage loadThumbnail(File file, boolean linearScale, int maxSize) throws IOException {
+        BufferedImage exif = readExifThumbnail(file);
+        if (exif != null && Math.max(exif.getWidth(), exif.getHeight()) >= maxSize) return ImageLoader.fitThumbnail(exif, maxSize);
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                int step = Math.max(1, Math.max(w, h) / maxSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return ImageLoader.fitThumbnail(reader.read(0, param), maxSize);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage readExifThumbnail(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) return null;
+            long remaining = file.length() - 2;
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) return null;
+                int length = in.readUnsignedShort() - 2;
+                remaining -= 4;
+                if (length < 0 || length > remaining) return null;
+                remaining -= length;
+                if (marker != 0xFFE1) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                if (length > 14 && segment[0] == 'E' && segment[1] == 'x' && segment[2] == 'i' && segment[3] == 'f' && segment[4] == 0 && segment[5] == 0) {
+                    return decodeExifThumbnail(ByteBuffer.wrap(segment, 6, length - 6).slice());
+                }
+            }
+        } catch (EOFException | IndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
+
+    private static BufferedImage decodeExifThumbnail(ByteBuffer tiff) {
+        if (tiff.getShort(0) == 0x4949) tiff.order(ByteOrder.LITTLE_ENDIAN);
+        else if (tiff.getShort(0) != 0x4D4D) return null;
+        long ifd0 = tiff.getInt(4) & 0xFFFFFFFFL;
+        if (!fits(tiff, ifd0, 2)) return null;
+        long next = ifd0 + 2 + 12L * (tiff.getShort((int) ifd0) & 0xFFFF);
+        if (!fits(tiff, next, 4)) return null;
+        long ifd1 = tiff.getInt((int) next) & 0xFFFFFFFFL;
+        if (ifd1 == 0 || !fits(tiff, ifd1, 2)) return null;
+        int entries = tiff.getShort((int) ifd1) & 0xFFFF;
+        if (!fits(tiff, ifd1 + 2, 12L * entries)) return null;
+        long offset = -1, length = -1;
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd1 + 2 + 12 * i;
+            int tag = tiff.getShort(entry) & 0xFFFF;
+            if (tag == EXIF_THUMBNAIL_OFFSET) offset = tiff.getInt(entry + 8) & 0xFFFFFFFFL;
+            else if (tag == EXIF_THUMBNAIL_LENGTH) length = tiff.getInt(entry + 8) & 0xFFFFFFFFL;
+        }
+        if (offset <= 0 || length <= 0 || !fits(tiff, offset, length)) return null;
+        byte[] data = new byte[(int) length];
+        tiff.get((int) offset, data);
+        try {
+            return ImageIO.read(new ByteArrayInputStream(data));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static boolean fits(ByteBuffer buffer, long offset, long length) {
+        return offset >= 0 && offset + length <= buffer.limit();
+    }
+}
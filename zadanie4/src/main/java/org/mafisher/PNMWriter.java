@@ -0,0 +1,168 @@
+package org.mafisher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class PNMWriter implements Closeable {
+
+    public enum Format {
+        PPM("P6"), PGM("P5"), PBM("P4");
+
+        private final String magicNumber;
+
+        Format(String magicNumber) {
+            this.magicNumber = magicNumber;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final int maxval;
+    private int rowsWritten;
+
+    public PNMWriter(File file, int width, int height) throws IOException {
+        this(file, Format.PPM, width, height, 255);
+    }
+
+    public PNMWriter(File file, Format format, int width, int height, int maxval) throws IOException {
+        if (maxval <= 0 || maxval > 65535) throw new IllegalArgumentException("Niepoprawna wartość maxval: " + maxval);
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.maxval = maxval;
+        this.target = file.toPath().toAbsolutePath();
+        this.temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".tmp");
+        this.channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        String header = format.magicNumber + "\n" + width + " " + height + "\n" + (format == Format.PBM ? "" : maxval + "\n");
+        buffer.put(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public void writeRows(int[] pixels, int offset, int rows) throws IOException {
+        if (maxval != 255 && format != Format.PBM) throw new IllegalStateException("Piksele 8-bitowe wymagają maxval 255");
+        for (int y = 0; y < rows; y++) {
+            int start = offset + y * width;
+            switch (format) {
+                case PPM -> {
+                    for (int i = start; i < start + width; i++) {
+                        ensure(3);
+                        int rgb = pixels[i];
+                        buffer.put((byte) (rgb >> 16));
+                        buffer.put((byte) (rgb >> 8));
+                        buffer.put((byte) rgb);
+                    }
+                }
+                case PGM -> {
+                    for (int i = start; i < start + width; i++) {
+                        ensure(1);
+                        int rgb = pixels[i];
+                        buffer.put((byte) ImageProcessor.luminosity((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF));
+                    }
+                }
+                case PBM -> {
+                    int bits = 0;
+                    for (int x = 0; x < width; x++) {
+                        int rgb = pixels[start + x];
+                        if (ImageProcessor.luminosity((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF) < 128) bits |= 0x80 >> (x & 7);
+                        if ((x & 7) == 7 || x == width - 1) {
+                            ensure(1);
+                            buffer.put((byte) bits);
+                            bits = 0;
+                        }
+                    }
+                }
+            }
+        }
+        rowsWritten += rows;
+    }
+
+    public void writeRows(HighDepthImage img, int y, int rows) throws IOException {
+        if (img.getMaxval() != maxval && format != Format.PBM) throw new IllegalStateException("Niezgodna wartość maxval");
+        short[] red = img.getRed();
+        short[] green = img.getGreen();
+        short[] blue = img.getBlue();
+        int start = y * width;
+        int end = start + rows * width;
+        for (int row = start; row < end; row += width) {
+            int bits = 0;
+            for (int i = row; i < row + width; i++) {
+                int r = red[i] & 0xFFFF;
+                int g = green[i] & 0xFFFF;
+                int b = blue[i] & 0xFFFF;
+                switch (format) {
+                    case PPM -> {
+                        putSample(r);
+                        putSample(g);
+                        putSample(b);
+                    }
+                    case PGM -> putSample(ImageProcessor.highDepthLuminosity(r, g, b));
+                    case PBM -> {
+                        int x = i - row;
+                        if (ImageProcessor.highDepthLuminosity(r, g, b) * 2 < img.getMaxval()) bits |= 0x80 >> (x & 7);
+                        if ((x & 7) == 7 || x == width - 1) {
+                            ensure(1);
+                            buffer.put((byte) bits);
+                            bits = 0;
+                        }
+                    }
+                }
+            }
+        }
+        rowsWritten += rows;
+    }
+
+    private void putSample(int v) throws IOException {
+        ensure(2);
+        if (maxval > 255) buffer.putShort((short) v);
+        else buffer.put((byte) v);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                if (rowsWritten < height) throw new IOException("Zapisano " + rowsWritten + " z " + height + " wierszy: " + target);
+                flush();
+            } finally {
+                channel.close();
+            }
+            move();
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    private void move() throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -1,79 +1,172 @@
 package org.mafisher;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 
 public class PPMBinaryReader {
 
-    private final BufferedInputStream bis;
+    private static final long WINDOW_SIZE = 1L << 24;
+
+    private final FileChannel channel;
+    private final long dataOffset;
     private final int maxval;
     private final boolean linearScale;
 
-    public PPMBinaryReader(BufferedInputStream bis, int maxval, boolean linearScale) {
-        this.bis = bis;
+    public PPMBinaryReader(FileChannel channel, long dataOffset, int maxval, boolean linearScale) {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
         this.maxval = maxval;
         this.linearScale = linearScale;
     }
 
     public void readPixels(PPMImage img) throws IOException {
-        skipWhitespace();
         int width = img.getWidth();
-        int height = img.getHeight();
         int[] pixels = img.getPixels();
-        int samples = width * height * 3;
-
-        if (maxval < 256) {
-            byte[] buffer = bis.readNBytes(samples);
-            if (buffer.length < samples) throw new IOException("Za mało danych w P6");
-            int p = 0;
-            for (int i = 0; i < pixels.length; i++) {
-                int r = buffer[p++] & 0xFF;
-                int g = buffer[p++] & 0xFF;
-                int b = buffer[p++] & 0xFF;
-
-                if (linearScale) {
-                    r = r * 255 / maxval;
-                    g = g * 255 / maxval;
-                    b = b * 255 / maxval;
+        int[] scale = PPMImage.scaleTable(maxval, maxval < 256 ? 256 : 65536, linearScale);
+        readWindows(width, img.getHeight(), Integer.MAX_VALUE, (buffer, y, rows) -> {
+            if (maxval < 256) decode8(buffer, pixels, y * width, rows, width, scale);
+            else decode16(buffer.asShortBuffer(), pixels, y * width, rows, width, scale);
+        });
+    }
+
+    public void readStrips(int width, int height, int stripRows, StripConsumer consumer) throws IOException {
+        int[] scale = PPMImage.scaleTable(maxval, maxval < 256 ? 256 : 65536, linearScale);
+        int[] strip = new int[width * Math.min(stripRows, height)];
+        readWindows(width, height, stripRows, (buffer, y, rows) -> {
+            if (maxval < 256) decode8(buffer, strip, 0, rows, width, scale);
+            else decode16(buffer.asShortBuffer(), strip, 0, rows, width, scale);
+            consumer.accept(y, rows, strip);
+        });
+    }
+
+    public void readSamples(HighDepthImage img) throws IOException {
+        int width = img.getWidth();
+        readWindows(width, img.getHeight(), Integer.MAX_VALUE, (buffer, y, rows) -> {
+            int start = y * width;
+            int end = start + rows * width;
+            short[] red = img.getRed();
+            short[] green = img.getGreen();
+            short[] blue = img.getBlue();
+            if (maxval < 256) {
+                for (int i = start; i < end; i++) {
+                    red[i] = (short) (buffer.get() & 0xFF);
+                    green[i] = (short) (buffer.get() & 0xFF);
+                    blue[i] = (short) (buffer.get() & 0xFF);
                 }
+            } else {
+                ShortBuffer shorts = buffer.asShortBuffer();
+                for (int i = start; i < end; i++) {
+                    red[i] = shorts.get();
+                    green[i] = shorts.get();
+                    blue[i] = shorts.get();
+                }
+            }
+        });
+    }
 
-                pixels[i] = (r << 16) | (g << 8) | b;
+    public void readSubsampled(PPMImage img, int sourceWidth, int sourceHeight, int step) throws IOException {
+        int bytesPerSample = maxval < 256 ? 1 : 2;
+        long rowBytes = (long) sourceWidth * 3 * bytesPerSample;
+        long position = skipWhitespace(rowBytes * sourceHeight);
+        if (channel.size() - position < rowBytes * sourceHeight) {
+            throw new IOException(bytesPerSample == 1 ? "Za mało danych w P6" : "Za mało danych w P6 16-bit");
+        }
+        int[] scale = PPMImage.scaleTable(maxval, maxval < 256 ? 256 : 65536, linearScale);
+        int[] pixels = img.getPixels();
+        int width = img.getWidth();
+        ByteBuffer row = ByteBuffer.allocate((int) rowBytes);
+        for (int y = 0; y < img.getHeight(); y++) {
+            row.clear();
+            long rowStart = position + (long) y * step * rowBytes;
+            while (row.hasRemaining()) {
+                if (channel.read(row, rowStart + row.position()) < 0) throw new IOException(bytesPerSample == 1 ? "Za mało danych w P6" : "Za mało danych w P6 16-bit");
             }
-        } else {
-            int pixelIndex = 0;
-            int sampleIndex = 0;
-            byte[] tmp = new byte[1 << 16];
-            while (sampleIndex < samples) {
-                int read = bis.read(tmp, 0, Math.min(tmp.length, samples*2 - sampleIndex*2));
-                if (read == -1) break;
-                int pos = 0;
-                while (pos + 1 < read && sampleIndex < samples) {
-                    int high = tmp[pos++] & 0xFF;
-                    int low = tmp[pos++] & 0xFF;
-                    int val = (high << 8 | low);
-
-                    if (linearScale) val = val * 255 / maxval;
-
-                    int mod = sampleIndex % 3;
-                    if (mod == 0) pixels[pixelIndex] = val << 16;
-                    else if (mod == 1) pixels[pixelIndex] |= val << 8;
-                    else {
-                        pixels[pixelIndex] |= val;
-                        pixelIndex++;
-                    }
-                    sampleIndex++;
+            int p = y * width;
+            for (int x = 0; x < width; x++) {
+                int s = x * step * 3 * bytesPerSample;
+                int r, g, b;
+                if (bytesPerSample == 1) {
+                    r = scale[row.get(s) & 0xFF];
+                    g = scale[row.get(s + 1) & 0xFF];
+                    b = scale[row.get(s + 2) & 0xFF];
+                } else {
+                    r = scale[row.getShort(s) & 0xFFFF];
+                    g = scale[row.getShort(s + 2) & 0xFFFF];
+                    b = scale[row.getShort(s + 4) & 0xFFFF];
                 }
+                pixels[p++] = (r << 16) | (g << 8) | b;
             }
-            if (sampleIndex < samples) throw new IOException("Za mało danych w P6 16-bit");
         }
     }
 
-    private void skipWhitespace() throws IOException {
-        int c;
-        do {
-            bis.mark(1);
-            c = bis.read();
-        } while (c != -1 && Character.isWhitespace(c));
-        if (c != -1) bis.reset();
+    private void readWindows(int width, int height, int maxRows, WindowDecoder decoder) throws IOException {
+        int bytesPerSample = maxval < 256 ? 1 : 2;
+        long rowBytes = (long) width * 3 * bytesPerSample;
+        long needed = rowBytes * height;
+
+        long position = skipWhitespace(needed);
+        if (channel.size() - position < needed) {
+            throw new IOException(bytesPerSample == 1 ? "Za mało danych w P6" : "Za mało danych w P6 16-bit");
+        }
+        if (needed == 0) return;
+
+        int rowsPerWindow = (int) Math.max(1, Math.min(Math.min(maxRows, height), WINDOW_SIZE / rowBytes));
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) (rowsPerWindow * rowBytes));
+        for (int y = 0; y < height; y += rowsPerWindow) {
+            int rows = Math.min(rowsPerWindow, height - y);
+            long start = position + y * rowBytes;
+            buffer.clear().limit((int) (rows * rowBytes));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw new IOException(bytesPerSample == 1 ? "Za mało danych w P6" : "Za mało danych w P6 16-bit");
+                }
+            }
+            decoder.decode(buffer.flip(), y, rows);
+        }
+    }
+
+    private static void decode8(ByteBuffer buffer, int[] pixels, int start, int rows, int width, int[] scale) {
+        byte[] row = new byte[width * 3];
+        for (int y = 0; y < rows; y++) {
+            buffer.get(row);
+            int p = start + y * width;
+            for (int s = 0; s < row.length; s += 3) {
+                int r = scale[row[s] & 0xFF];
+                int g = scale[row[s + 1] & 0xFF];
+                int b = scale[row[s + 2] & 0xFF];
+                pixels[p++] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static void decode16(ShortBuffer buffer, int[] pixels, int start, int rows, int width, int[] scale) {
+        short[] row = new short[width * 3];
+        for (int y = 0; y < rows; y++) {
+            buffer.get(row);
+            int p = start + y * width;
+            for (int s = 0; s < row.length; s += 3) {
+                int r = scale[row[s] & 0xFFFF];
+                int g = scale[row[s + 1] & 0xFFFF];
+                int b = scale[row[s + 2] & 0xFFFF];
+                pixels[p++] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private long skipWhitespace(long needed) throws IOException {
+        long position = dataOffset;
+        long surplus = channel.size() - dataOffset - needed;
+        ByteBuffer one = ByteBuffer.allocate(1);
+        while (surplus > 0 && channel.read(one.clear(), position) == 1 && Character.isWhitespace(one.get(0))) {
+            position++;
+            surplus--;
+        }
+        return position;
+    }
+
+    private interface WindowDecoder {
+        void decode(ByteBuffer buffer, int y, int rows) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package org.mafisher;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+
+public class PPMHeader {
+
+    private final String magicNumber;
+    private final int width;
+    private final int height;
+    private final int maxval;
+    private final long dataOffset;
+
+    private PPMHeader(String magicNumber, int width, int height, int maxval, long dataOffset) {
+        this.magicNumber = magicNumber;
+        this.width = width;
+        this.height = height;
+        this.maxval = maxval;
+        this.dataOffset = dataOffset;
+    }
+
+    public String getMagicNumber() { return magicNumber; }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getMaxval() { return maxval; }
+
+    public long getDataOffset() { return dataOffset; }
+
+    public static PPMHeader read(BufferedInputStream in) throws IOException {
+        TokenReader reader = new TokenReader(in);
+        String magicNumber = reader.next();
+        int width = reader.nextInt();
+        int height = reader.nextInt();
+        int maxval = reader.nextInt();
+        if (width <= 0 || height <= 0 || maxval <= 0 || maxval > 65535) {
+            throw new IOException("Niepoprawny nagłówek PPM");
+        }
+        return new PPMHeader(magicNumber, width, height, maxval, reader.position);
+    }
+
+    private static class TokenReader {
+        private final BufferedInputStream in;
+        private long position = 0;
+
+        TokenReader(BufferedInputStream in) {
+            this.in = in;
+        }
+
+        int nextInt() throws IOException {
+            String token = next();
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Niepoprawny nagłówek PPM: " + token);
+            }
+        }
+
+        String next() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            boolean inToken = false;
+            boolean comment = false;
+
+            while ((c = in.read()) != -1) {
+                position++;
+                char ch = (char)c;
+                if (comment) {
+                    if (ch == '\n' || ch == '\r') comment = false;
+                    continue;
+                }
+                if (ch == '#') {
+                    comment = true;
+                    continue;
+                }
+                if (Character.isWhitespace(ch)) {
+                    if (inToken) break;
+                } else {
+                    inToken = true;
+                    sb.append(ch);
+                }
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+    }
+}
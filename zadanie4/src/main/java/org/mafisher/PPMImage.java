@@ -1,17 +1,20 @@
 package org.mafisher;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 public class PPMImage {
 
     private final int width;
     private final int height;
+    private final BufferedImage image;
     private final int[] pixels;
 
     public PPMImage(int width, int height) {
         this.width = width;
         this.height = height;
-        this.pixels = new int[width * height];
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
     }
 
     public int getWidth() { return width; }
@@ -24,9 +27,16 @@ public class PPMImage {
         pixels[y * width + x] = (r << 16) | (g << 8) | b;
     }
 
+    static int[] scaleTable(int maxval, int size, boolean linearScale) {
+        int[] table = new int[size];
+        for (int v = 0; v < size; v++) {
+            int val = Math.min(v, maxval);
+            table[v] = linearScale ? val * 255 / maxval : Math.min(val, 255);
+        }
+        return table;
+    }
+
     public BufferedImage toBufferedImage() {
-        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        img.setRGB(0, 0, width, height, pixels, 0, width);
-        return img;
+        return image;
     }
-}
\ No newline at end of file
+}
@@ -5,60 +5,109 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class PPMImageLoader implements ImageLoader {
 
     @Override
     public BufferedImage load(File file, boolean linearScale) throws IOException {
+        PPMHeader header;
         try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
-            bis.mark(64);
-            byte[] magic = new byte[2];
-            int r = bis.read(magic);
-            if (r != 2 || magic[0] != 'P' || (magic[1] != '3' && magic[1] != '6')) return null;
-            bis.reset();
+            header = readHeader(bis);
+            if (header == null) return null;
 
-            String magicNumber = readToken(bis);
-            int width = Integer.parseInt(readToken(bis));
-            int height = Integer.parseInt(readToken(bis));
-            int maxval = Integer.parseInt(readToken(bis));
-
-            PPMImage ppm = new PPMImage(width, height);
+            if ("P3".equals(header.getMagicNumber()) && !PPMParallelTextReader.isWorthwhile(file.length() - header.getDataOffset())) {
+                PPMImage ppm = new PPMImage(header.getWidth(), header.getHeight());
+                PPMTextReader reader = new PPMTextReader(bis, header.getMaxval(), linearScale);
+                reader.readPixels(ppm);
+                return ppm.toBufferedImage();
+            }
+        }
 
-            if ("P3".equals(magicNumber)) {
-                PPMTextReader reader = new PPMTextReader(bis, maxval, linearScale);
+        PPMImage ppm = new PPMImage(header.getWidth(), header.getHeight());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if ("P3".equals(header.getMagicNumber())) {
+                PPMParallelTextReader reader = new PPMParallelTextReader(channel, header.getDataOffset(), header.getMaxval(), linearScale);
                 reader.readPixels(ppm);
             } else {
-                PPMBinaryReader reader = new PPMBinaryReader(bis, maxval, linearScale);
+                PPMBinaryReader reader = new PPMBinaryReader(channel, header.getDataOffset(), header.getMaxval(), linearScale);
                 reader.readPixels(ppm);
             }
-
-            return ppm.toBufferedImage();
         }
+        return ppm.toBufferedImage();
     }
 
-    private String readToken(BufferedInputStream in) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int c;
-        boolean inToken = false;
-        boolean comment = false;
+    @Override
+    public void stream(File file, boolean linearScale, int stripRows, StripConsumer consumer) throws IOException {
+        PPMHeader header;
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
+            header = readHeader(bis);
+            if (header == null) throw new IOException("Nieobsługiwany format pliku");
+            consumer.begin(header.getWidth(), header.getHeight());
 
-        while ((c = in.read()) != -1) {
-            char ch = (char)c;
-            if (comment) {
-                if (ch == '\n' || ch == '\r') comment = false;
-                continue;
-            }
-            if (ch == '#') {
-                comment = true;
-                continue;
+            if ("P3".equals(header.getMagicNumber())) {
+                PPMTextReader reader = new PPMTextReader(bis, header.getMaxval(), linearScale);
+                reader.readStrips(header.getWidth(), header.getHeight(), stripRows, consumer);
+                return;
             }
-            if (Character.isWhitespace(ch)) {
-                if (inToken) break;
-            } else {
-                inToken = true;
-                sb.append(ch);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            PPMBinaryReader reader = new PPMBinaryReader(channel, header.getDataOffset(), header.getMaxval(), linearScale);
+            reader.readStrips(header.getWidth(), header.getHeight(), stripRows, consumer);
+        }
+    }
+
+    @Override
+    public BufferedImage loadThumbnail(File file, boolean linearScale, int maxSize) throws IOException {
+        PPMHeader header = readHeader(file);
+        if (header == null) return null;
+        if (!"P6".equals(header.getMagicNumber())) return ImageLoader.super.loadThumbnail(file, linearScale, maxSize);
+
+        int step = Math.max(1, Math.max(header.getWidth(), header.getHeight()) / maxSize);
+        PPMImage ppm = new PPMImage((header.getWidth() + step - 1) / step, (header.getHeight() + step - 1) / step);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            PPMBinaryReader reader = new PPMBinaryReader(channel, header.getDataOffset(), header.getMaxval(), linearScale);
+            reader.readSubsampled(ppm, header.getWidth(), header.getHeight(), step);
+        }
+        return ImageLoader.fitThumbnail(ppm.toBufferedImage(), maxSize);
+    }
+
+    public HighDepthImage loadHighDepth(File file) throws IOException {
+        PPMHeader header;
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
+            header = readHeader(bis);
+            if (header == null) return null;
+
+            if ("P3".equals(header.getMagicNumber())) {
+                HighDepthImage img = new HighDepthImage(header.getWidth(), header.getHeight(), header.getMaxval());
+                PPMTextReader reader = new PPMTextReader(bis, header.getMaxval(), false);
+                reader.readSamples(img);
+                return img;
             }
         }
-        return sb.length() > 0 ? sb.toString() : null;
+
+        HighDepthImage img = new HighDepthImage(header.getWidth(), header.getHeight(), header.getMaxval());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            PPMBinaryReader reader = new PPMBinaryReader(channel, header.getDataOffset(), header.getMaxval(), false);
+            reader.readSamples(img);
+        }
+        return img;
+    }
+
+    public PPMHeader readHeader(File file) throws IOException {
+        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file))) {
+            return readHeader(bis);
+        }
+    }
+
+    private PPMHeader readHeader(BufferedInputStream bis) throws IOException {
+        bis.mark(64);
+        byte[] magic = new byte[2];
+        int r = bis.read(magic);
+        if (r != 2 || magic[0] != 'P' || (magic[1] != '3' && magic[1] != '6')) return null;
+        bis.reset();
+        return PPMHeader.read(bis);
     }
-}
\ No newline at end of file
+}
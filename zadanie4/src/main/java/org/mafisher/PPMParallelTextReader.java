@@ -0,0 +1,196 @@
+package org.mafisher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class PPMParallelTextReader {
+
+    public static final long MIN_PARALLEL_SIZE = 8L << 20;
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 64L << 20;
+    private static final int READ_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final long dataOffset;
+    private final int maxval;
+    private final boolean linearScale;
+    private final ForkJoinPool pool;
+
+    public PPMParallelTextReader(FileChannel channel, long dataOffset, int maxval, boolean linearScale) {
+        this(channel, dataOffset, maxval, linearScale, ForkJoinPool.commonPool());
+    }
+
+    public PPMParallelTextReader(FileChannel channel, long dataOffset, int maxval, boolean linearScale, ForkJoinPool pool) {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.maxval = maxval;
+        this.linearScale = linearScale;
+        this.pool = pool;
+    }
+
+    public static boolean isWorthwhile(long dataSize) {
+        return dataSize >= MIN_PARALLEL_SIZE && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    public void readPixels(PPMImage img) throws IOException {
+        int[] pixels = img.getPixels();
+        long total = (long) pixels.length * 3;
+        int[] scale = PPMImage.scaleTable(maxval, maxval + 1, linearScale);
+
+        List<Chunk> chunks = split();
+
+        List<Callable<Long>> counting = new ArrayList<>();
+        for (Chunk chunk : chunks) counting.add(() -> chunk.countSamples());
+        long sampleStart = 0;
+        List<Long> counts = runAll(counting);
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).firstSample = sampleStart;
+            sampleStart += counts.get(i);
+        }
+        if (sampleStart < total) throw new IOException("Za mało danych w P3");
+
+        List<Callable<Long>> parsing = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.firstSample >= total) break;
+            parsing.add(() -> chunk.parse(pixels, total, scale));
+        }
+        runAll(parsing);
+
+        for (Chunk chunk : chunks) {
+            if (chunk.firstSample >= total) break;
+            if (chunk.firstSample % 3 != 0) pixels[(int) (chunk.firstSample / 3)] |= chunk.headBits;
+        }
+    }
+
+    private List<Chunk> split() throws IOException {
+        long end = channel.size();
+        long size = end - dataOffset;
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (pool.getParallelism() * 4L)));
+
+        List<Chunk> chunks = new ArrayList<>();
+        long start = dataOffset;
+        while (start < end) {
+            long boundary = start + chunkSize >= end ? end : nextLineStart(start + chunkSize, end);
+            if (boundary - start > Integer.MAX_VALUE) throw new IOException("Zbyt długa linia w P3");
+            chunks.add(new Chunk(start, (int) (boundary - start)));
+            start = boundary;
+        }
+        return chunks;
+    }
+
+    private long nextLineStart(long from, long end) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = from;
+        while (position < end) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                byte c = probe.get(i);
+                if (c == '\n' || c == '\r') return position + i + 1;
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) results.add(future.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Przerwano wczytywanie P3", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    private class Chunk {
+        private final long start;
+        private final int length;
+        private long firstSample;
+        private int headBits;
+
+        Chunk(long start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        private ByteBuffer read() {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            try {
+                while (buf.position() < length) {
+                    buf.limit(Math.min(length, buf.position() + READ_SIZE));
+                    if (channel.read(buf, start + buf.position()) < 0) throw new IOException("Za mało danych w P3");
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return buf;
+        }
+
+        long countSamples() {
+            ByteBuffer buf = read();
+            long count = 0;
+            boolean inToken = false;
+            for (int i = 0; i < length; i++) {
+                int c = buf.get(i);
+                if (c == '#') {
+                    while (i + 1 < length && buf.get(i + 1) != '\n' && buf.get(i + 1) != '\r') i++;
+                    inToken = false;
+                } else if (PPMTextReader.isWhitespace(c)) {
+                    inToken = false;
+                } else if (!inToken) {
+                    inToken = true;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        long parse(int[] pixels, long total, int[] scale) {
+            ByteBuffer buf = read();
+            long sample = firstSample;
+            int i = 0;
+            while (i < length && sample < total) {
+                int c = buf.get(i);
+                if (c == '#') {
+                    while (i < length && buf.get(i) != '\n' && buf.get(i) != '\r') i++;
+                    continue;
+                }
+                if (PPMTextReader.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+
+                int val = 0;
+                while (i < length && (c = buf.get(i)) != '#' && !PPMTextReader.isWhitespace(c)) {
+                    if (c < '0' || c > '9') throw new UncheckedIOException(new IOException("Niepoprawna wartość w P3: '" + (char) c + "'"));
+                    val = val * 10 + (c - '0');
+                    if (val > maxval) throw new UncheckedIOException(new IOException("Wartość spoza zakresu w P3"));
+                    i++;
+                }
+
+                int shift = 16 - 8 * (int) (sample % 3);
+                int pixel = (int) (sample / 3);
+                if (pixel == firstSample / 3 && firstSample % 3 != 0) headBits |= scale[val] << shift;
+                else pixels[pixel] |= scale[val] << shift;
+                sample++;
+            }
+            return sample - firstSample;
+        }
+    }
+}
@@ -5,9 +5,14 @@ import java.io.IOException;
 
 public class PPMTextReader {
 
+    private static final int BUFFER_SIZE = 1 << 16;
+
     private final BufferedInputStream bis;
     private final int maxval;
     private final boolean linearScale;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
 
     public PPMTextReader(BufferedInputStream bis, int maxval, boolean linearScale) {
         this.bis = bis;
@@ -16,37 +21,82 @@ public class PPMTextReader {
     }
 
     public void readPixels(PPMImage img) throws IOException {
-        int width = img.getWidth();
-        int height = img.getHeight();
-        int total = width * height * 3;
         int[] pixels = img.getPixels();
-        StringBuilder sb = new StringBuilder();
-        int idx = 0;
-
-        int b;
-        while (idx < total && (b = bis.read()) != -1) {
-            char ch = (char)b;
-            if (ch == '#') {
-                while ((b = bis.read()) != -1 && b != '\n' && b != '\r');
-                continue;
-            }
-            if (Character.isWhitespace(ch)) {
-                if (sb.length() > 0) {
-                    int val = Integer.parseInt(sb.toString());
-                    sb.setLength(0);
+        decode(pixels, pixels.length, PPMImage.scaleTable(maxval, maxval + 1, linearScale));
+    }
+
+    public void readStrips(int width, int height, int stripRows, StripConsumer consumer) throws IOException {
+        int[] scale = PPMImage.scaleTable(maxval, maxval + 1, linearScale);
+        int[] strip = new int[width * Math.min(stripRows, height)];
+        for (int y = 0; y < height; y += stripRows) {
+            int rows = Math.min(stripRows, height - y);
+            decode(strip, rows * width, scale);
+            consumer.accept(y, rows, strip);
+        }
+    }
+
+    private void decode(int[] pixels, int count, int[] scale) throws IOException {
+        for (int i = 0; i < count; i++) {
+            int r = scale[nextSample()];
+            int g = scale[nextSample()];
+            int b = scale[nextSample()];
+            pixels[i] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    public void readSamples(HighDepthImage img) throws IOException {
+        short[] red = img.getRed();
+        short[] green = img.getGreen();
+        short[] blue = img.getBlue();
+        for (int i = 0; i < red.length; i++) {
+            red[i] = (short) nextSample();
+            green[i] = (short) nextSample();
+            blue[i] = (short) nextSample();
+        }
+    }
+
+    private int nextSample() throws IOException {
+        int c = skipSeparators();
+        if (c == -1) throw new IOException("Za mało danych w P3");
 
-                    if (linearScale) val = val * 255 / maxval;
+        int val = 0;
+        do {
+            if (c < '0' || c > '9') throw new IOException("Niepoprawna wartość w P3: '" + (char) c + "'");
+            val = val * 10 + (c - '0');
+            if (val > maxval) throw new IOException("Wartość spoza zakresu w P3");
+            c = read();
+        } while (c != -1 && c != '#' && !isWhitespace(c));
+
+        if (c == '#') pos--;
+        return val;
+    }
 
-                    int mod = idx % 3;
-                    if (mod == 0) pixels[idx / 3] = val << 16;
-                    else if (mod == 1) pixels[idx / 3] |= val << 8;
-                    else pixels[idx / 3] |= val;
+    private int skipSeparators() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '#') {
+                while ((c = read()) != -1 && c != '\n' && c != '\r');
+                if (c == -1) return -1;
+            } else if (!isWhitespace(c)) {
+                return c;
+            }
+        }
+        return -1;
+    }
 
-                    idx++;
-                }
-            } else sb.append(ch);
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = bis.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
         }
+        return buffer[pos++] & 0xFF;
+    }
 
-        if (idx < total) throw new IOException("Za mało danych w P3");
+    static boolean isWhitespace(int c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package org.mafisher;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+final class PixelArrays {
+
+    private PixelArrays() {
+    }
+
+    static int[] packed(BufferedImage img) {
+        int type = img.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) return null;
+        WritableRaster raster = img.getRaster();
+        if (raster.getParent() != null || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm)) return null;
+        if (sm.getScanlineStride() != img.getWidth() || raster.getDataBuffer().getOffset() != 0) return null;
+        return ((DataBufferInt) raster.getDataBuffer()).getData();
+    }
+
+    static void copyRows(BufferedImage img, int[] dst, int y0, int y1) {
+        int[] data = packed(img);
+        int w = img.getWidth();
+        if (data != null) System.arraycopy(data, y0 * w, dst, y0 * w, (y1 - y0) * w);
+        else img.getRGB(0, y0, w, y1 - y0, dst, y0 * w, w);
+    }
+
+    static int[] data(BufferedImage rgb) {
+        return ((DataBufferInt) rgb.getRaster().getDataBuffer()).getData();
+    }
+
+    static BufferedImage sample(BufferedImage img, Rectangle region, double step) {
+        int w = Math.max(1, (int) (region.width / step));
+        int h = Math.max(1, (int) (region.height / step));
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] dst = data(result);
+        int[] src = packed(img);
+        int stride = img.getWidth();
+        int[] row = src == null ? new int[region.width] : null;
+        for (int y = 0; y < h; y++) {
+            int sy = region.y + (int) (y * step);
+            int base = sy * stride + region.x;
+            if (src == null) {
+                img.getRGB(region.x, sy, region.width, 1, row, 0, region.width);
+                base = 0;
+            }
+            int[] line = src == null ? row : src;
+            for (int x = 0; x < w; x++) dst[y * w + x] = line[base + (int) (x * step)] & 0xFFFFFF;
+        }
+        return result;
+    }
+}
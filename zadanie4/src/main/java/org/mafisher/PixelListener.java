@@ -0,0 +1,5 @@
+package org.mafisher;
+
+interface PixelListener {
+    void onPixel(int x, int y, int rgb);
+}
@@ -0,0 +1,5 @@
+package org.mafisher;
+
+public interface PointOperation {
+    void apply(int[] pixels, int offset, int length);
+}
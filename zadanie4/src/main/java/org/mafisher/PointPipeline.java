@@ -0,0 +1,121 @@
+package org.mafisher;
+
+import java.awt.image.BufferedImage;
+import java.util.function.IntUnaryOperator;
+
+public class PointPipeline {
+
+    private enum Mix { AVERAGE, LUMINOSITY }
+
+    private final ImageProcessor processor;
+    private final BufferedImage src;
+    private final int[] preR = identity();
+    private final int[] preG = identity();
+    private final int[] preB = identity();
+    private Mix mix;
+    private int[] postR;
+    private int[] postG;
+    private int[] postB;
+
+    PointPipeline(ImageProcessor processor, BufferedImage src) {
+        this.processor = processor;
+        this.src = src;
+    }
+
+    public PointPipeline add(int valueR, int valueG, int valueB) {
+        return map(v -> clamp(v + valueR), v -> clamp(v + valueG), v -> clamp(v + valueB));
+    }
+
+    public PointPipeline subtract(int valueR, int valueG, int valueB) {
+        return add(-valueR, -valueG, -valueB);
+    }
+
+    public PointPipeline multiply(double factorR, double factorG, double factorB) {
+        return map(v -> clamp((int)(v * factorR)), v -> clamp((int)(v * factorG)), v -> clamp((int)(v * factorB)));
+    }
+
+    public PointPipeline divide(double divisorR, double divisorG, double divisorB) {
+        if (divisorR == 0 || divisorG == 0 || divisorB == 0) {
+            throw new IllegalArgumentException("Dzielnik nie może być zerem");
+        }
+        return multiply(1.0/divisorR, 1.0/divisorG, 1.0/divisorB);
+    }
+
+    public PointPipeline changeBrightness(int delta) {
+        return add(delta, delta, delta);
+    }
+
+    public PointPipeline toGrayscaleAverage() {
+        return mix(Mix.AVERAGE);
+    }
+
+    public PointPipeline toGrayscaleLuminosity() {
+        return mix(Mix.LUMINOSITY);
+    }
+
+    public PointOperation toOperation() {
+        if (mix == null) return ImageProcessor.lookupOperation(preR, preG, preB);
+        int[] r = preR.clone(), g = preG.clone(), b = preB.clone();
+        int[] out = new int[256];
+        for (int v = 0; v < 256; v++) out[v] = (postR[v] << 16) | (postG[v] << 8) | postB[v];
+        boolean average = mix == Mix.AVERAGE;
+        return (pixels, offset, length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                int rgb = pixels[i];
+                int rv = r[(rgb >> 16) & 0xFF], gv = g[(rgb >> 8) & 0xFF], bv = b[rgb & 0xFF];
+                pixels[i] = out[average ? (rv + gv + bv) / 3 : ImageProcessor.luminosity(rv, gv, bv)];
+            }
+        };
+    }
+
+    public BufferedImage build() {
+        return processor.applyPointOperation(src, toOperation());
+    }
+
+    private PointPipeline map(IntUnaryOperator r, IntUnaryOperator g, IntUnaryOperator b) {
+        if (mix == null) {
+            compose(preR, r);
+            compose(preG, g);
+            compose(preB, b);
+        } else {
+            compose(postR, r);
+            compose(postG, g);
+            compose(postB, b);
+        }
+        return this;
+    }
+
+    private PointPipeline mix(Mix next) {
+        if (mix == null) {
+            mix = next;
+            postR = identity();
+            postG = identity();
+            postB = identity();
+            return this;
+        }
+        int[] gray = new int[256];
+        for (int v = 0; v < 256; v++) {
+            gray[v] = next == Mix.AVERAGE
+                    ? (postR[v] + postG[v] + postB[v]) / 3
+                    : ImageProcessor.luminosity(postR[v], postG[v], postB[v]);
+        }
+        postR = gray;
+        postG = gray.clone();
+        postB = gray.clone();
+        return this;
+    }
+
+    private static void compose(int[] lut, IntUnaryOperator f) {
+        for (int v = 0; v < 256; v++) lut[v] = f.applyAsInt(lut[v]);
+    }
+
+    private static int[] identity() {
+        int[] lut = new int[256];
+        for (int v = 0; v < 256; v++) lut[v] = v;
+        return lut;
+    }
+
+    private static int clamp(int val) {
+        return Math.max(0, Math.min(255, val));
+    }
+}
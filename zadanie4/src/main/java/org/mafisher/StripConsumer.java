@@ -0,0 +1,9 @@
+package org.mafisher;
+
+import java.io.IOException;
+
+public interface StripConsumer {
+    default void begin(int width, int height) throws IOException {}
+
+    void accept(int y, int rows, int[] pixels) throws IOException;
+}
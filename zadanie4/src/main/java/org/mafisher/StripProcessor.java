@@ -0,0 +1,59 @@
+package org.mafisher;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+public class StripProcessor {
+
+    private final ImageLoader loader;
+    private final int stripRows;
+
+    public StripProcessor() {
+        this(new PPMImageLoader(), 256);
+    }
+
+    public StripProcessor(ImageLoader loader, int stripRows) {
+        if (stripRows <= 0) throw new IllegalArgumentException("Liczba wierszy paska musi być dodatnia");
+        this.loader = loader;
+        this.stripRows = stripRows;
+    }
+
+    public void process(File input, File output, boolean linearScale, PointOperation... operations) throws IOException {
+        if (input.getCanonicalFile().equals(output.getCanonicalFile())) {
+            throw new IOException("Plik wyjściowy musi być inny niż plik wejściowy: " + output);
+        }
+        try (WritingConsumer consumer = new WritingConsumer(output, operations)) {
+            loader.stream(input, linearScale, stripRows, consumer);
+        }
+    }
+
+    private static class WritingConsumer implements StripConsumer, Closeable {
+        private final File output;
+        private final PointOperation[] operations;
+        private PNMWriter writer;
+        private int width;
+
+        WritingConsumer(File output, PointOperation[] operations) {
+            this.output = output;
+            this.operations = operations;
+        }
+
+        @Override
+        public void begin(int w, int h) throws IOException {
+            width = w;
+            writer = new PNMWriter(output, w, h);
+        }
+
+        @Override
+        public void accept(int y, int rows, int[] pixels) throws IOException {
+            for (PointOperation operation : operations) operation.apply(pixels, 0, rows * width);
+            writer.writeRows(pixels, 0, rows);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) writer.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.mafisher;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+class ThumbnailBrowser extends JDialog {
+
+    private static final int THUMBNAIL_SIZE = 160;
+    private static final int MAX_CACHED_THUMBNAILS = 500;
+
+    private final JList<File> list;
+    private final Function<File, ImageLoader> loaderFor;
+    private final boolean linearScale;
+    private final ThumbnailCache cache = new ThumbnailCache();
+    private final Set<File> requested = ConcurrentHashMap.newKeySet();
+    private final Map<File, Icon> thumbnails = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Icon> eldest) {
+            if (size() <= MAX_CACHED_THUMBNAILS) return false;
+            requested.remove(eldest.getKey());
+            return true;
+        }
+    });
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), task -> {
+                Thread thread = new Thread(task, "thumbnail-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private volatile int firstVisible;
+    private volatile int lastVisible = -1;
+
+    ThumbnailBrowser(Frame owner, File[] files, Function<File, ImageLoader> loaderFor, boolean linearScale, Consumer<File> onOpen) {
+        super(owner, "Przeglądanie katalogu (" + files.length + " plików)", false);
+        this.loaderFor = loaderFor;
+        this.linearScale = linearScale;
+        setSize(1000, 700);
+        setLocationRelativeTo(owner);
+
+        list = new JList<>(files);
+        list.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        list.setVisibleRowCount(-1);
+        list.setFixedCellWidth(THUMBNAIL_SIZE + 20);
+        list.setFixedCellHeight(THUMBNAIL_SIZE + 40);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean selected, boolean focus) {
+                JLabel label = (JLabel) super.getListCellRendererComponent(l, ((File) value).getName(), index, selected, focus);
+                label.setHorizontalAlignment(SwingConstants.CENTER);
+                label.setHorizontalTextPosition(SwingConstants.CENTER);
+                label.setVerticalTextPosition(SwingConstants.BOTTOM);
+                label.setIcon(thumbnailFor((File) value, index));
+                return label;
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && list.getSelectedValue() != null) onOpen.accept(list.getSelectedValue());
+            }
+        });
+
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.getViewport().addChangeListener(e -> updateVisibleRange());
+        add(scroll, BorderLayout.CENTER);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                executor.shutdownNow();
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void updateVisibleRange() {
+        firstVisible = list.getFirstVisibleIndex();
+        lastVisible = list.getLastVisibleIndex();
+    }
+
+    private Icon thumbnailFor(File file, int index) {
+        Icon icon = thumbnails.get(file);
+        if (icon != null) return icon;
+        if (requested.add(file)) executor.execute(() -> load(file, index));
+        return null;
+    }
+
+    private void load(File file, int index) {
+        if (lastVisible >= 0 && (index < firstVisible || index > lastVisible)) {
+            requested.remove(file);
+            return;
+        }
+        Icon icon;
+        try {
+            BufferedImage thumbnail = cache.get(file, loaderFor.apply(file), linearScale, THUMBNAIL_SIZE);
+            icon = thumbnail != null ? new ImageIcon(thumbnail) : UIManager.getIcon("OptionPane.warningIcon");
+        } catch (Exception ex) {
+            icon = UIManager.getIcon("OptionPane.errorIcon");
+        }
+        thumbnails.put(file, icon);
+        SwingUtilities.invokeLater(() -> {
+            Rectangle cell = list.getCellBounds(index, index);
+            if (cell != null) list.repaint(cell);
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package org.mafisher;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class ThumbnailCache {
+
+    private final File directory;
+
+    public ThumbnailCache() {
+        this(new File(System.getProperty("user.home"), ".cache/mafisher/thumbnails"));
+    }
+
+    public ThumbnailCache(File directory) {
+        this.directory = directory;
+    }
+
+    public BufferedImage get(File file, ImageLoader loader, boolean linearScale, int maxSize) throws IOException {
+        File cached = new File(directory, key(file, linearScale, maxSize) + ".png");
+        if (cached.isFile()) {
+            BufferedImage img = ImageIO.read(cached);
+            if (img != null) return img;
+        }
+        BufferedImage thumbnail = loader.loadThumbnail(file, linearScale, maxSize);
+        if (thumbnail == null) return null;
+        try {
+            Files.createDirectories(directory.toPath());
+            File tmp = File.createTempFile("thumb", ".tmp", directory);
+            try {
+                ImageIO.write(thumbnail, "png", tmp);
+                Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch (IOException ignored) {
+        }
+        return thumbnail;
+    }
+
+    private static String key(File file, boolean linearScale, int maxSize) {
+        String id = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length() + "|" + linearScale + "|" + maxSize;
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
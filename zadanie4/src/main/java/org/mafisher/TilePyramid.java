@@ -0,0 +1,131 @@
+package org.mafisher;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+final class TilePyramid {
+
+    static final int TILE_SIZE = 512;
+
+    private volatile BufferedImage[] levels;
+    private final int width;
+    private final int height;
+    private SwingWorker<Void, BufferedImage> builder;
+
+    TilePyramid(BufferedImage base) {
+        this.width = base.getWidth();
+        this.height = base.getHeight();
+        int count = 1;
+        for (int w = width, h = height; w > TILE_SIZE || h > TILE_SIZE; w = (w + 1) / 2, h = (h + 1) / 2) count++;
+        this.levels = new BufferedImage[count];
+        this.levels[0] = base;
+    }
+
+    void start(Runnable onLevel) {
+        if (levels.length == 1) return;
+        builder = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                BufferedImage[] current = levels;
+                BufferedImage level = current[0];
+                for (int k = 1; k < current.length && !isCancelled(); k++) {
+                    level = downsample(level, this::isCancelled);
+                    if (level != null) publish(level);
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<BufferedImage> chunks) {
+                if (isCancelled()) return;
+                BufferedImage[] next = levels.clone();
+                for (BufferedImage level : chunks) {
+                    int k = 1;
+                    while (next[k] != null) k++;
+                    next[k] = level;
+                }
+                levels = next;
+                onLevel.run();
+            }
+        };
+        builder.execute();
+    }
+
+    void dispose() {
+        if (builder != null) builder.cancel(true);
+    }
+
+    void paint(Graphics2D g, int offsetX, int offsetY, double scale) {
+        BufferedImage[] levels = this.levels;
+        int k = 0;
+        while (k + 1 < levels.length && (1 << (k + 1)) * scale <= 1.0) k++;
+        while (levels[k] == null) k--;
+        BufferedImage level = levels[k];
+        int f = 1 << k;
+        int lw = level.getWidth();
+        int lh = level.getHeight();
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(offsetX, offsetY, (int) Math.ceil(width * scale), (int) Math.ceil(height * scale));
+        double span = (double) TILE_SIZE * f * scale;
+        int tx0 = Math.max(0, (int) Math.floor((clip.x - offsetX) / span));
+        int ty0 = Math.max(0, (int) Math.floor((clip.y - offsetY) / span));
+        int tx1 = Math.min((lw - 1) / TILE_SIZE, (int) Math.floor((clip.x + clip.width - offsetX) / span));
+        int ty1 = Math.min((lh - 1) / TILE_SIZE, (int) Math.floor((clip.y + clip.height - offsetY) / span));
+
+        for (int ty = ty0; ty <= ty1; ty++) {
+            int sy0 = ty * TILE_SIZE;
+            int sy1 = Math.min(lh, sy0 + TILE_SIZE);
+            int dy0 = edge(sy0, f, height, offsetY, scale);
+            int dy1 = edge(sy1, f, height, offsetY, scale);
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int sx0 = tx * TILE_SIZE;
+                int sx1 = Math.min(lw, sx0 + TILE_SIZE);
+                int dx0 = edge(sx0, f, width, offsetX, scale);
+                int dx1 = edge(sx1, f, width, offsetX, scale);
+                g.drawImage(level, dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+            }
+        }
+    }
+
+    private static int edge(int levelCoord, int factor, int size, int offset, double scale) {
+        return offset + (int) Math.round(Math.min(size, (long) levelCoord * factor) * scale);
+    }
+
+    private static BufferedImage downsample(BufferedImage src, BooleanSupplier cancelled) {
+        int pw = src.getWidth();
+        int ph = src.getHeight();
+        int w = (pw + 1) / 2;
+        int h = (ph + 1) / 2;
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] dst = PixelArrays.data(result);
+        int[] packed = PixelArrays.packed(src);
+        int[] top = new int[pw];
+        int[] bottom = new int[pw];
+        for (int y = 0; y < h; y++) {
+            if (cancelled.getAsBoolean()) return null;
+            int y0 = 2 * y;
+            int y1 = Math.min(y0 + 1, ph - 1);
+            if (packed != null) {
+                System.arraycopy(packed, y0 * pw, top, 0, pw);
+                System.arraycopy(packed, y1 * pw, bottom, 0, pw);
+            } else {
+                src.getRGB(0, y0, pw, 1, top, 0, pw);
+                src.getRGB(0, y1, pw, 1, bottom, 0, pw);
+            }
+            for (int x = 0, i = y * w; x < w; x++, i++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(x0 + 1, pw - 1);
+                int a = top[x0], b = top[x1], c = bottom[x0], d = bottom[x1];
+                int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+                int gr = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+                int bl = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+                dst[i] = (r << 16) | (gr << 8) | bl;
+            }
+        }
+        return result;
+    }
+}
@@ -3,10 +3,28 @@ package org.mafisher;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.image.DataBuffer;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class ViewerFrame extends JFrame {
 
+    private static final int PREVIEW_DELAY_MS = 40;
+    private static final int PREFETCH_COUNT = 2;
+
+    private record Decoded(BufferedImage image, HighDepthImage highDepth) {
+    }
+
+    private record Adjusted(int delta, BufferedImage image, HighDepthImage highDepth) {
+    }
+
     private final ImagePanel imagePanel;
     private final JLabel statusLabel;
     private final JLabel pixelInfoLabel;
@@ -16,10 +34,21 @@ public class ViewerFrame extends JFrame {
     private final ImageProcessor imageProcessor;
     private BufferedImage currentImage;
     private BufferedImage originalImage;
+    private HighDepthImage currentHighDepth;
+    private HighDepthImage originalHighDepth;
+    private boolean highDepthLinear;
     private File currentFile;
+    private SwingWorker<Adjusted, Void> brightnessWorker;
+    private int brightnessGeneration;
+    private Adjusted brightnessResult;
+
+    private File[] folderFiles = new File[0];
+    private int folderIndex = -1;
+    private int loadGeneration;
 
-    private final ImageLoader ppmLoader = new PPMImageLoader();
+    private final PPMImageLoader ppmLoader = new PPMImageLoader();
     private final ImageLoader jpegLoader = new JPEGImageLoader();
+    private final DecodeCache<Decoded> decodeCache = new DecodeCache<>(Runtime.getRuntime().maxMemory() / 4, this::decode, ViewerFrame::sizeInBytes);
 
     public ViewerFrame() {
         super("PPM / JPEG Viewer - Przetwarzanie obrazów");
@@ -40,11 +69,33 @@ public class ViewerFrame extends JFrame {
         right.add(openBtn);
         right.add(Box.createVerticalStrut(5));
 
+        JButton browseBtn = new JButton("Przeglądaj katalog...");
+        browseBtn.addActionListener(e -> browseFolder());
+        right.add(browseBtn);
+        right.add(Box.createVerticalStrut(5));
+
+        JPanel navPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        JButton prevBtn = new JButton("< Poprzedni");
+        prevBtn.addActionListener(e -> stepFolder(-1));
+        JButton nextBtn = new JButton("Następny >");
+        nextBtn.addActionListener(e -> stepFolder(1));
+        navPanel.add(prevBtn);
+        navPanel.add(nextBtn);
+        navPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        navPanel.setMaximumSize(new Dimension(250, 30));
+        right.add(navPanel);
+        right.add(Box.createVerticalStrut(5));
+
         JButton saveJpegBtn = new JButton("Zapisz jako JPEG...");
         saveJpegBtn.addActionListener(e -> saveAsJpeg());
         right.add(saveJpegBtn);
         right.add(Box.createVerticalStrut(5));
 
+        JButton savePnmBtn = new JButton("Zapisz jako PPM/PGM/PBM...");
+        savePnmBtn.addActionListener(e -> saveAsPNM());
+        right.add(savePnmBtn);
+        right.add(Box.createVerticalStrut(5));
+
         JButton resetBtn = new JButton("Resetuj do oryginału");
         resetBtn.addActionListener(e -> resetToOriginal());
         right.add(resetBtn);
@@ -59,6 +110,7 @@ public class ViewerFrame extends JFrame {
         right.add(Box.createVerticalStrut(10));
 
         linearScaleCheckbox = new JCheckBox("Liniowe skalowanie kolorów", true);
+        linearScaleCheckbox.addActionListener(e -> decodeCache.clear());
         right.add(linearScaleCheckbox);
         right.add(Box.createVerticalStrut(10));
 
@@ -126,6 +178,18 @@ public class ViewerFrame extends JFrame {
         right.add(gaussBtn);
         right.add(Box.createVerticalStrut(10));
 
+        right.add(createSeparator("Histogram"));
+
+        JButton stretchBtn = new JButton("Rozciągnięcie histogramu");
+        stretchBtn.addActionListener(e -> applyFilter("stretch"));
+        right.add(stretchBtn);
+        right.add(Box.createVerticalStrut(5));
+
+        JButton equalizeBtn = new JButton("Wyrównanie histogramu");
+        equalizeBtn.addActionListener(e -> applyFilter("equalize"));
+        right.add(equalizeBtn);
+        right.add(Box.createVerticalStrut(10));
+
         pixelInfoLabel = new JLabel("R: 255, G: 255, B: 255");
         pixelInfoLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
         pixelInfoLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -134,6 +198,11 @@ public class ViewerFrame extends JFrame {
         pixelInfoLabel.setPreferredSize(new Dimension(200,40));
         pixelInfoLabel.setMaximumSize(new Dimension(200,40));
         right.add(pixelInfoLabel);
+        int[] probeSizes = {1, 3, 5, 9};
+        JComboBox<String> probeSizeBox = new JComboBox<>(new String[]{"Piksel 1x1", "Średnia 3x3", "Średnia 5x5", "Średnia 9x9"});
+        probeSizeBox.setMaximumSize(new Dimension(200, 25));
+        probeSizeBox.addActionListener(e -> imagePanel.setProbeSize(probeSizes[probeSizeBox.getSelectedIndex()]));
+        right.add(probeSizeBox);
         right.add(Box.createVerticalGlue());
 
         JButton fitBtn = new JButton("Dopasuj do okna");
@@ -146,7 +215,23 @@ public class ViewerFrame extends JFrame {
         statusLabel.setBorder(BorderFactory.createEmptyBorder(4,4,4,4));
         add(statusLabel, BorderLayout.SOUTH);
 
-        imagePanel.setPixelInfoConsumer(rgb -> updatePixelInfo(rgb[0], rgb[1], rgb[2]));
+        imagePanel.setPixelListener(this::updatePixelInfo);
+
+        JRootPane root = getRootPane();
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_DOWN, 0), "nextImage");
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_UP, 0), "previousImage");
+        root.getActionMap().put("nextImage", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stepFolder(1);
+            }
+        });
+        root.getActionMap().put("previousImage", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stepFolder(-1);
+            }
+        });
 
         imageSaver = new ImageSaver();
         imageProcessor = new ImageProcessor();
@@ -167,40 +252,186 @@ public class ViewerFrame extends JFrame {
         statusLabel.setText(s);
     }
 
-    private void updatePixelInfo(int r, int g, int b) {
-        pixelInfoLabel.setText(r<0 ? "R: -, G: -, B: -" : String.format("R: %d, G: %d, B: %d", r, g, b));
+    private void updatePixelInfo(int x, int y, int rgb) {
+        if (x < 0) {
+            pixelInfoLabel.setText("R: -, G: -, B: -");
+            return;
+        }
+        HighDepthImage source = imagePanel.getSource();
+        if (source == null) {
+            pixelInfoLabel.setText(String.format("R: %d, G: %d, B: %d", (rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF));
+            return;
+        }
+        int size = imagePanel.getProbeSize();
+        int x0 = Math.max(0, x - size / 2), x1 = Math.min(source.getWidth(), x0 + size);
+        int y0 = Math.max(0, y - size / 2), y1 = Math.min(source.getHeight(), y0 + size);
+        long r = 0, g = 0, b = 0;
+        for (int yy = y0; yy < y1; yy++) {
+            for (int i = yy * source.getWidth() + x0; i < yy * source.getWidth() + x1; i++) {
+                r += source.getRed()[i] & 0xFFFF;
+                g += source.getGreen()[i] & 0xFFFF;
+                b += source.getBlue()[i] & 0xFFFF;
+            }
+        }
+        int n = (x1 - x0) * (y1 - y0);
+        pixelInfoLabel.setText(String.format("R: %d, G: %d, B: %d", r / n, g / n, b / n));
     }
 
     private void openImage() {
-        JFileChooser chooser = new JFileChooser();
+        JFileChooser chooser = new JFileChooser(currentFile != null ? currentFile.getParentFile() : null);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        openInFolder(chooser.getSelectedFile().getAbsoluteFile(), listFolder(chooser.getSelectedFile().getAbsoluteFile().getParentFile()));
+    }
+
+    private void browseFolder() {
+        JFileChooser chooser = new JFileChooser(currentFile != null ? currentFile.getParentFile() : null);
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
-        File f = chooser.getSelectedFile();
+        File[] files = listFolder(chooser.getSelectedFile().getAbsoluteFile());
+        if (files.length == 0) {
+            JOptionPane.showMessageDialog(this, "Brak obrazów PPM/JPEG w katalogu.", "Uwaga", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        new ThumbnailBrowser(this, files, this::loaderFor, linearScaleCheckbox.isSelected(), f -> openInFolder(f, files)).setVisible(true);
+    }
+
+    private File[] listFolder(File dir) {
+        File[] files = dir.listFiles(file -> file.isFile() && loaderFor(file) != null);
+        if (files == null) return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void openInFolder(File f, File[] files) {
+        folderFiles = files;
+        folderIndex = Arrays.asList(files).indexOf(f);
+        openFile(f);
+    }
+
+    private void stepFolder(int step) {
+        if (folderIndex < 0) return;
+        int index = folderIndex + step;
+        if (index < 0 || index >= folderFiles.length) {
+            setStatus(step > 0 ? "To jest ostatni obraz w katalogu" : "To jest pierwszy obraz w katalogu");
+            return;
+        }
+        folderIndex = index;
+        openFile(folderFiles[index]);
+    }
+
+    private void openFile(File f) {
+        setStatus("Wczytywanie " + f.getName());
+        int generation = ++loadGeneration;
+        Future<Decoded> future = decodeCache.get(f, linearScaleCheckbox.isSelected());
+        prefetchAround();
+        if (future.isDone()) {
+            showDecoded(f, future);
+            return;
+        }
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                try {
+                    future.get();
+                } catch (Exception ignored) {
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                if (generation == loadGeneration) showDecoded(f, future);
+            }
+        }.execute();
+    }
+
+    private void prefetchAround() {
+        if (folderIndex < 0) return;
+        List<File> neighbours = new ArrayList<>();
+        for (int d = 1; d <= PREFETCH_COUNT; d++) {
+            if (folderIndex + d < folderFiles.length) neighbours.add(folderFiles[folderIndex + d]);
+            if (folderIndex - d >= 0) neighbours.add(folderFiles[folderIndex - d]);
+        }
+        decodeCache.prefetch(neighbours, linearScaleCheckbox.isSelected());
+    }
+
+    private void showDecoded(File f, Future<Decoded> future) {
         try {
-            setStatus("Wczytywanie " + f.getName());
-            BufferedImage img = loadFile(f);
-            if (img == null) {
+            Decoded decoded = future.get();
+            if (decoded == null) {
                 JOptionPane.showMessageDialog(this, "Nieobsługiwany format pliku.", "Błąd", JOptionPane.ERROR_MESSAGE);
                 setStatus("Błąd: nieobsługiwany format");
                 return;
             }
+            HighDepthImage highDepth = decoded.highDepth();
+            if (highDepth != null) {
+                highDepthLinear = linearScaleCheckbox.isSelected();
+                originalHighDepth = highDepth;
+                showHighDepth(highDepth);
+                originalImage = copyImage(currentImage);
+                currentFile = f;
+                setStatus("Wczytano: " + f.getName() + " (" + highDepth.getWidth() + "x" + highDepth.getHeight() + ", maxval " + highDepth.getMaxval() + ")");
+                return;
+            }
+            BufferedImage img = decoded.image();
             currentImage = img;
             originalImage = copyImage(img);
+            currentHighDepth = null;
+            originalHighDepth = null;
             currentFile = f;
             imagePanel.setImage(img);
             setStatus("Wczytano: " + f.getName() + " (" + img.getWidth() + "x" + img.getHeight() + ")");
         } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Błąd wczytywania: " + ex.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
-            setStatus("Błąd: " + ex.getMessage());
+            String message = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
+            JOptionPane.showMessageDialog(this, "Błąd wczytywania: " + message, "Błąd", JOptionPane.ERROR_MESSAGE);
+            setStatus("Błąd: " + message);
         }
     }
 
-    private BufferedImage loadFile(File file) throws Exception {
+    private Decoded decode(File file, boolean linearScale) throws Exception {
+        HighDepthImage highDepth = loadHighDepth(file);
+        if (highDepth != null) return new Decoded(null, highDepth);
+        BufferedImage img = loadFile(file, linearScale);
+        return img == null ? null : new Decoded(img, null);
+    }
+
+    private static long sizeInBytes(Decoded decoded) {
+        if (decoded.highDepth() != null) return 6L * decoded.highDepth().getWidth() * decoded.highDepth().getHeight();
+        DataBuffer buffer = decoded.image().getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private BufferedImage loadFile(File file, boolean linearScale) throws Exception {
+        ImageLoader loader = loaderFor(file);
+        if (loader == null) return null;
+        return loader.load(file, loader == ppmLoader ? linearScale : true);
+    }
+
+    private ImageLoader loaderFor(File file) {
         String name = file.getName().toLowerCase();
-        if (name.endsWith(".ppm")) return ppmLoader.load(file, linearScaleCheckbox.isSelected());
-        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return jpegLoader.load(file, true);
+        if (name.endsWith(".ppm")) return ppmLoader;
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return jpegLoader;
         return null;
     }
 
+    private HighDepthImage loadHighDepth(File file) throws IOException {
+        if (!file.getName().toLowerCase().endsWith(".ppm")) return null;
+        PPMHeader header = ppmLoader.readHeader(file);
+        if (header == null || header.getMaxval() <= 255) return null;
+        return ppmLoader.loadHighDepth(file);
+    }
+
+    private void showHighDepth(HighDepthImage img) {
+        currentHighDepth = img;
+        imagePanel.setImage(img, highDepthLinear);
+        currentImage = imagePanel.getImage();
+    }
+
+    private int toSampleUnits(int value) {
+        if (currentHighDepth == null) return value;
+        return (int) Math.round(value * currentHighDepth.getMaxval() / 255.0);
+    }
+
     private void saveAsJpeg() {
         if (currentImage == null) {
             JOptionPane.showMessageDialog(this, "Brak obrazu do zapisania.", "Uwaga", JOptionPane.WARNING_MESSAGE);
@@ -219,13 +450,40 @@ public class ViewerFrame extends JFrame {
         }
     }
 
+    private void saveAsPNM() {
+        if (currentImage == null) {
+            JOptionPane.showMessageDialog(this, "Brak obrazu do zapisania.", "Uwaga", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File((currentFile!=null ? stripExt(currentFile.getName()) : "image")+".ppm"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File out = chooser.getSelectedFile();
+        String name = out.getName().toLowerCase();
+        PNMWriter.Format format = name.endsWith(".pgm") ? PNMWriter.Format.PGM
+                : name.endsWith(".pbm") ? PNMWriter.Format.PBM : PNMWriter.Format.PPM;
+        try {
+            if (currentHighDepth != null) imageSaver.savePNM(currentHighDepth, out, format);
+            else imageSaver.savePNM(currentImage, out, format);
+            setStatus("Zapisano " + format + ": " + out.getName());
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "Błąd zapisu: " + ex.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+            setStatus("Błąd zapisu: " + ex.getMessage());
+        }
+    }
+
     private void resetToOriginal() {
         if (originalImage == null) {
             JOptionPane.showMessageDialog(this, "Brak oryginalnego obrazu.", "Uwaga", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        currentImage = copyImage(originalImage);
-        imagePanel.setImage(currentImage);
+        if (originalHighDepth != null) {
+            showHighDepth(originalHighDepth);
+        } else {
+            currentHighDepth = null;
+            currentImage = copyImage(originalImage);
+            imagePanel.setImage(currentImage);
+        }
         setStatus("Przywrócono oryginalny obraz");
     }
 
@@ -259,34 +517,42 @@ public class ViewerFrame extends JFrame {
 
         try {
             BufferedImage processed = null;
+            HighDepthImage highDepth = null;
             switch(type) {
                 case "add":
                     int ar = Integer.parseInt(rField.getText());
                     int ag = Integer.parseInt(gField.getText());
                     int ab = Integer.parseInt(bField.getText());
-                    processed = imageProcessor.add(currentImage, ar, ag, ab);
+                    if (currentHighDepth != null) highDepth = imageProcessor.add(currentHighDepth, toSampleUnits(ar), toSampleUnits(ag), toSampleUnits(ab));
+                    else processed = imageProcessor.add(currentImage, ar, ag, ab);
                     break;
                 case "subtract":
                     int sr = Integer.parseInt(rField.getText());
                     int sg = Integer.parseInt(gField.getText());
                     int sb = Integer.parseInt(bField.getText());
-                    processed = imageProcessor.subtract(currentImage, sr, sg, sb);
+                    if (currentHighDepth != null) highDepth = imageProcessor.subtract(currentHighDepth, toSampleUnits(sr), toSampleUnits(sg), toSampleUnits(sb));
+                    else processed = imageProcessor.subtract(currentImage, sr, sg, sb);
                     break;
                 case "multiply":
                     double mr = Double.parseDouble(rField.getText());
                     double mg = Double.parseDouble(gField.getText());
                     double mb = Double.parseDouble(bField.getText());
-                    processed = imageProcessor.multiply(currentImage, mr, mg, mb);
+                    if (currentHighDepth != null) highDepth = imageProcessor.multiply(currentHighDepth, mr, mg, mb);
+                    else processed = imageProcessor.multiply(currentImage, mr, mg, mb);
                     break;
                 case "divide":
                     double dr = Double.parseDouble(rField.getText());
                     double dg = Double.parseDouble(gField.getText());
                     double db = Double.parseDouble(bField.getText());
-                    processed = imageProcessor.divide(currentImage, dr, dg, db);
+                    if (currentHighDepth != null) highDepth = imageProcessor.divide(currentHighDepth, dr, dg, db);
+                    else processed = imageProcessor.divide(currentImage, dr, dg, db);
                     break;
             }
 
-            if (processed != null) {
+            if (highDepth != null) {
+                showHighDepth(highDepth);
+                setStatus("Zastosowano: " + title);
+            } else if (processed != null) {
                 currentImage = processed;
                 imagePanel.setImage(currentImage);
                 setStatus("Zastosowano: " + title);
@@ -304,18 +570,110 @@ public class ViewerFrame extends JFrame {
             return;
         }
 
-        String input = JOptionPane.showInputDialog(this, "Zmiana jasności (-255 do 255):", "0");
-        if (input == null) return;
-
-        try {
-            int delta = Integer.parseInt(input);
-            BufferedImage processed = imageProcessor.changeBrightness(currentImage, delta);
-            currentImage = processed;
-            imagePanel.setImage(currentImage);
-            setStatus("Zastosowano zmianę jasności: " + delta);
-        } catch (NumberFormatException ex) {
-            JOptionPane.showMessageDialog(this, "Nieprawidłowa wartość numeryczna.", "Błąd", JOptionPane.ERROR_MESSAGE);
+        JSlider slider = new JSlider(-255, 255, 0);
+        slider.setMajorTickSpacing(85);
+        slider.setPaintTicks(true);
+        slider.setPaintLabels(true);
+        JLabel valueLabel = new JLabel("0", SwingConstants.RIGHT);
+        valueLabel.setPreferredSize(new Dimension(40, 20));
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(slider, BorderLayout.CENTER);
+        panel.add(valueLabel, BorderLayout.EAST);
+
+        Timer debounce = new Timer(PREVIEW_DELAY_MS, e -> runBrightness(slider.getValue(), false, false));
+        debounce.setRepeats(false);
+        slider.addChangeListener(e -> {
+            valueLabel.setText(String.valueOf(slider.getValue()));
+            if (slider.getValueIsAdjusting()) {
+                debounce.restart();
+            } else {
+                debounce.stop();
+                runBrightness(slider.getValue(), true, false);
+            }
+        });
+
+        brightnessResult = null;
+        int result = JOptionPane.showConfirmDialog(this, panel, "Zmiana jasności", JOptionPane.OK_CANCEL_OPTION);
+        debounce.stop();
+        int delta = slider.getValue();
+        if (result != JOptionPane.OK_OPTION || delta == 0) {
+            cancelBrightness();
+            imagePanel.replaceImage(currentImage, currentHighDepth);
+            return;
         }
+        if (brightnessResult != null && brightnessResult.delta() == delta) {
+            cancelBrightness();
+            commitBrightness(brightnessResult);
+        } else {
+            runBrightness(delta, true, true);
+        }
+    }
+
+    private void cancelBrightness() {
+        if (brightnessWorker != null) brightnessWorker.cancel(true);
+        brightnessWorker = null;
+        brightnessGeneration++;
+    }
+
+    private void runBrightness(int delta, boolean fullResolution, boolean commit) {
+        cancelBrightness();
+        int generation = brightnessGeneration;
+        BufferedImage base = currentImage;
+        HighDepthImage baseHighDepth = currentHighDepth;
+        int sampleDelta = toSampleUnits(delta);
+        boolean linear = highDepthLinear;
+        Rectangle region = imagePanel.getVisibleImageRegion();
+        double step = Math.max(1.0, 1.0 / imagePanel.getScale());
+        if (!fullResolution && region == null) return;
+        if (fullResolution) setStatus("Przetwarzanie...");
+
+        brightnessWorker = new SwingWorker<>() {
+            @Override
+            protected Adjusted doInBackground() {
+                if (!fullResolution) {
+                    BufferedImage preview = PixelArrays.sample(base, region, step);
+                    imageProcessor.brightnessOperation(delta).apply(PixelArrays.data(preview), 0, preview.getWidth() * preview.getHeight());
+                    return new Adjusted(delta, preview, null);
+                }
+                if (baseHighDepth != null) {
+                    HighDepthImage adjusted = imageProcessor.changeBrightness(baseHighDepth, sampleDelta, this::isCancelled);
+                    if (adjusted == null || isCancelled()) return null;
+                    return new Adjusted(delta, adjusted.toBufferedImage(linear), adjusted);
+                }
+                BufferedImage adjusted = imageProcessor.changeBrightness(base, delta, this::isCancelled);
+                return adjusted == null ? null : new Adjusted(delta, adjusted, null);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || generation != brightnessGeneration) return;
+                brightnessWorker = null;
+                try {
+                    Adjusted adjusted = get();
+                    if (!fullResolution) {
+                        imagePanel.setPreview(adjusted.image(), region);
+                    } else if (commit) {
+                        commitBrightness(adjusted);
+                    } else {
+                        brightnessResult = adjusted;
+                        imagePanel.replaceImage(adjusted.image(), adjusted.highDepth());
+                        setStatus("Podgląd zmiany jasności: " + delta);
+                    }
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(ViewerFrame.this, "Błąd przetwarzania: " + ex.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+                    setStatus("Błąd przetwarzania");
+                }
+            }
+        };
+        brightnessWorker.execute();
+    }
+
+    private void commitBrightness(Adjusted adjusted) {
+        brightnessResult = null;
+        currentHighDepth = adjusted.highDepth();
+        currentImage = adjusted.image();
+        imagePanel.replaceImage(currentImage, currentHighDepth);
+        setStatus("Zastosowano zmianę jasności: " + adjusted.delta());
     }
 
     private void applyFilter(String filterType) {
@@ -325,9 +683,20 @@ public class ViewerFrame extends JFrame {
         }
 
         setStatus("Przetwarzanie...");
-        SwingWorker<BufferedImage, Void> worker = new SwingWorker<>() {
+        SwingWorker<Object, Void> worker = new SwingWorker<>() {
             @Override
-            protected BufferedImage doInBackground() {
+            protected Object doInBackground() {
+                if (currentHighDepth != null || filterType.equals("stretch") || filterType.equals("equalize")) {
+                    HighDepthImage src = currentHighDepth != null ? currentHighDepth : HighDepthImage.fromBufferedImage(currentImage);
+                    HighDepthImage result = switch (filterType) {
+                        case "gray_avg" -> imageProcessor.toGrayscaleAverage(src);
+                        case "gray_lum" -> imageProcessor.toGrayscaleLuminosity(src);
+                        case "stretch" -> imageProcessor.stretchHistogram(src);
+                        case "equalize" -> imageProcessor.equalizeHistogram(src);
+                        default -> null;
+                    };
+                    if (result != null) return result;
+                }
                 return switch (filterType) {
                     case "smooth" -> imageProcessor.smoothingFilter(currentImage);
                     case "median" -> imageProcessor.medianFilter(currentImage);
@@ -343,9 +712,13 @@ public class ViewerFrame extends JFrame {
             @Override
             protected void done() {
                 try {
-                    BufferedImage result = get();
-                    if (result != null) {
-                        currentImage = result;
+                    Object result = get();
+                    if (result instanceof HighDepthImage highDepth) {
+                        showHighDepth(highDepth);
+                        setStatus("Zastosowano filtr: " + filterType);
+                    } else if (result instanceof BufferedImage img) {
+                        currentHighDepth = null;
+                        currentImage = img;
                         imagePanel.setImage(currentImage);
                         setStatus("Zastosowano filtr: " + filterType);
                     }